@@ -0,0 +1,79 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording hits and of merging the coverage of several reports, independently of any parsing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CoverageBenchmark {
+
+  @Param({"1000"})
+  public int files;
+
+  @Param({"200"})
+  public int linesPerFile;
+
+  private String[] paths;
+  private Coverage report;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    paths = new String[files];
+    for (int f = 0; f < files; f++) {
+      paths[f] = "C:\\project\\src\\File" + f + ".cs";
+    }
+    report = addHits();
+  }
+
+  @Benchmark
+  public Coverage addHits() {
+    Coverage coverage = new Coverage();
+    for (int f = 0; f < files; f++) {
+      for (int line = 1; line <= linesPerFile; line++) {
+        coverage.addHits(paths[f], line, (f + line) % 3);
+      }
+    }
+    return coverage;
+  }
+
+  @Benchmark
+  public Coverage merge() {
+    Coverage coverage = new Coverage();
+    coverage.add(report);
+    coverage.add(report);
+    return coverage;
+  }
+
+}
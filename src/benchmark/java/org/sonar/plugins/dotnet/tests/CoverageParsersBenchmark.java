@@ -0,0 +1,123 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the coverage parsers on reports of the same shape.
+ * The canonical path cache is warm after the first invocation, as it is for all the reports but the first one of an analysis.
+ * Run with "-prof gc" to get the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CoverageParsersBenchmark {
+
+  @Param({"42"})
+  public long seed;
+
+  @Param({"10"})
+  public int modules;
+
+  @Param({"20"})
+  public int filesPerModule;
+
+  @Param({"500"})
+  public int sequencePointsPerFile;
+
+  private File dir;
+  private long sequencePoints;
+  private File openCover;
+  private File ncover3;
+  private File visualStudio;
+  private File dotCover;
+  private long dotCoverBytes;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDir();
+    ReportGenerator generator = new ReportGenerator(seed)
+      .sourceDir(new File(dir, "src"))
+      .modules(modules)
+      .filesPerModule(filesPerModule)
+      .methodsPerFile(sequencePointsPerFile / 10)
+      .sequencePointsPerMethod(10);
+    sequencePoints = (long) generator.files() * generator.sequencePointsPerFile();
+    openCover = generator.openCover(new File(dir, "opencover.xml"), 0, 1);
+    ncover3 = generator.ncover3(new File(dir, "coverage.nccov"), 0, 1);
+    visualStudio = generator.visualStudioCoverage(new File(dir, "coverage.coveragexml"), 0, 1);
+    dotCover = generator.dotCoverHtml(new File(dir, "dotcover.html"), 0, 1);
+    dotCoverBytes = FileUtils.sizeOfDirectory(new File(dir, "dotcover"));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    FileUtils.deleteQuietly(dir);
+  }
+
+  @Benchmark
+  public Coverage openCover(ReportThroughput throughput) {
+    Coverage coverage = new Coverage();
+    new OpenCoverReportParser().parse(openCover, coverage);
+    throughput.add(openCover.length(), sequencePoints);
+    return coverage;
+  }
+
+  @Benchmark
+  public Coverage ncover3(ReportThroughput throughput) {
+    Coverage coverage = new Coverage();
+    new NCover3ReportParser().parse(ncover3, coverage);
+    throughput.add(ncover3.length(), sequencePoints);
+    return coverage;
+  }
+
+  @Benchmark
+  public Coverage visualStudio(ReportThroughput throughput) {
+    Coverage coverage = new Coverage();
+    new VisualStudioCoverageXmlReportParser().parse(visualStudio, coverage);
+    throughput.add(visualStudio.length(), sequencePoints);
+    return coverage;
+  }
+
+  @Benchmark
+  public Coverage dotCover(ReportThroughput throughput) {
+    Coverage coverage = new Coverage();
+    new DotCoverReportsAggregator(new DotCoverReportParser()).parse(dotCover, coverage);
+    throughput.add(dotCoverBytes, sequencePoints);
+    return coverage;
+  }
+
+}
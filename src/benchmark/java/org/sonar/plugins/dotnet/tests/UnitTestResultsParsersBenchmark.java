@@ -0,0 +1,86 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the unit test results parsers. Run with "-prof gc" to get the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UnitTestResultsParsersBenchmark {
+
+  @Param({"42"})
+  public long seed;
+
+  @Param({"10000"})
+  public int tests;
+
+  private File dir;
+  private File nunit;
+  private File trx;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDir();
+    ReportGenerator generator = new ReportGenerator(seed).tests(tests, 0.05, 0.02);
+    nunit = generator.nunit(new File(dir, "nunit.xml"), 0);
+    trx = generator.trx(new File(dir, "results.trx"), 0);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    FileUtils.deleteQuietly(dir);
+  }
+
+  @Benchmark
+  public UnitTestResults nunit(ReportThroughput throughput) {
+    UnitTestResults results = new UnitTestResults();
+    new NUnitTestResultsFileParser().parse(nunit, results);
+    throughput.add(nunit.length(), tests);
+    return results;
+  }
+
+  @Benchmark
+  public UnitTestResults visualStudio(ReportThroughput throughput) {
+    UnitTestResults results = new UnitTestResults();
+    new VisualStudioTestResultsFileParser().parse(trx, results);
+    throughput.add(trx.length(), tests);
+    return results;
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Visual Studio coverage XML report of one million ranges by default, and the buffering of its ranges alone:
+ * boxed multimaps, as the parser used to, against one bit set per source id, kept in a map as the source ids may be sparse.
+ * Run with "-prof gc" to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VisualStudioCoverageBenchmark {
+
+  @Param({"42"})
+  public long seed;
+
+  @Param({"10"})
+  public int modules;
+
+  @Param({"100"})
+  public int filesPerModule;
+
+  @Param({"1000"})
+  public int rangesPerFile;
+
+  private File dir;
+  private File report;
+  private int[] sources;
+  private int[] lines;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDir();
+    ReportGenerator generator = new ReportGenerator(seed)
+      .sourceDir(new File(dir, "src"))
+      .modules(modules)
+      .filesPerModule(filesPerModule)
+      .methodsPerFile(rangesPerFile / 10)
+      .sequencePointsPerMethod(10);
+    report = generator.visualStudioCoverage(new File(dir, "coverage.coveragexml"), 0, 1);
+
+    Random random = new Random(seed);
+    int ranges = filesPerModule * rangesPerFile;
+    sources = new int[ranges];
+    lines = new int[ranges];
+    for (int i = 0; i < ranges; i++) {
+      sources[i] = random.nextInt(filesPerModule);
+      lines[i] = 10 + random.nextInt(rangesPerFile * 2);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    FileUtils.deleteQuietly(dir);
+  }
+
+  @Benchmark
+  public Coverage parse() {
+    Coverage coverage = new Coverage();
+    new VisualStudioCoverageXmlReportParser().parse(report, coverage);
+    return coverage;
+  }
+
+  @Benchmark
+  public Multimap<Integer, Integer> bufferModuleRangesInMultimap() {
+    Multimap<Integer, Integer> lineSets = HashMultimap.create();
+    for (int i = 0; i < sources.length; i++) {
+      lineSets.put(sources[i], lines[i]);
+    }
+    return lineSets;
+  }
+
+  @Benchmark
+  public Map<Integer, BitSet> bufferModuleRangesInBitSets() {
+    Map<Integer, BitSet> lineSets = Maps.newHashMap();
+    for (int i = 0; i < sources.length; i++) {
+      BitSet lineSet = lineSets.get(sources[i]);
+      if (lineSet == null) {
+        lineSet = new BitSet();
+        lineSets.put(sources[i], lineSet);
+      }
+      lineSet.set(lines[i]);
+    }
+    return lineSets;
+  }
+
+}
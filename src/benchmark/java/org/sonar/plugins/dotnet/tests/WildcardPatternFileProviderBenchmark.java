@@ -0,0 +1,101 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of report patterns in a tree where most of the entries are in folders such as "packages" or "obj".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WildcardPatternFileProviderBenchmark {
+
+  private static final List<String> PATTERNS = ImmutableList.of(
+    "*" + File.separator + "TestResults" + File.separator + "*.trx",
+    "*" + File.separator + "TestResults" + File.separator + "*.xml",
+    "**" + File.separator + "coverage.xml",
+    "**" + File.separator + "*.coveragexml");
+
+  @Param({"50"})
+  public int projects;
+
+  @Param({"200"})
+  public int noiseFilesPerProject;
+
+  private File dir;
+  private WildcardPatternFileProvider provider;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDir();
+    for (int p = 0; p < projects; p++) {
+      File project = new File(dir, "Project" + p);
+      touch(new File(project, "TestResults" + File.separator + "results.trx"));
+      touch(new File(project, "TestResults" + File.separator + "coverage.xml"));
+      for (int n = 0; n < noiseFilesPerProject; n++) {
+        touch(new File(project, "obj" + File.separator + "Debug" + File.separator + (n % 10) + File.separator + "File" + n + ".cs"));
+        touch(new File(project, "packages" + File.separator + "Package" + (n % 20) + File.separator + "lib" + File.separator + "File" + n + ".dll"));
+      }
+    }
+    provider = new WildcardPatternFileProvider(dir, File.separator);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    FileUtils.deleteQuietly(dir);
+  }
+
+  @Benchmark
+  public Set<File> recursivePattern() {
+    return provider.listFiles("**" + File.separator + "TestResults" + File.separator + "*.trx");
+  }
+
+  @Benchmark
+  public Map<String, Set<File>> patterns() {
+    return provider.listFiles(PATTERNS);
+  }
+
+  private static void touch(File file) throws IOException {
+    Files.createParentDirs(file);
+    Files.touch(file);
+  }
+
+}
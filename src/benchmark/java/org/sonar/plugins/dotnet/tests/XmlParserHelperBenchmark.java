@@ -0,0 +1,168 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-file setup cost when parsing many small reports, such as the per-test-run trx files:
+ * the shared factory of XmlParserHelper versus looking up a new factory for each file.
+ * Also the attribute access on an OpenCover-like report: looking up each attribute by name and parsing its String value,
+ * versus attribute handles which resolve the index once per element type and decode the integer from the reader buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class XmlParserHelperBenchmark {
+
+  @Param({"1000"})
+  public int reports;
+
+  @Param({"200000"})
+  public int sequencePoints;
+
+  private File dir;
+  private File[] files;
+  private File report;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    dir = Files.createTempDir();
+    files = new File[reports];
+    for (int i = 0; i < reports; i++) {
+      files[i] = new File(dir, i + ".xml");
+      Files.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<Root><Child value=\"" + i + "\" /></Root>\n", files[i], Charsets.UTF_8);
+    }
+
+    report = new File(dir, "report.xml");
+    StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<Root>\n");
+    for (int i = 0; i < sequencePoints; i++) {
+      sb.append("<SequencePoint vc=\"").append(i % 7).append("\" uspid=\"").append(i).append("\" ordinal=\"").append(i % 50)
+        .append("\" offset=\"").append(i * 3).append("\" sl=\"").append(1 + i % 2000).append("\" sc=\"9\" el=\"").append(1 + i % 2000)
+        .append("\" ec=\"40\" bec=\"0\" bev=\"0\" fileid=\"").append(i % 100).append("\" />\n");
+    }
+    sb.append("</Root>\n");
+    Files.write(sb, report, Charsets.UTF_8);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    FileUtils.deleteQuietly(dir);
+  }
+
+  @Benchmark
+  public int sharedFactory() {
+    int sum = 0;
+    for (File file : files) {
+      XmlParserHelper xmlParserHelper = new XmlParserHelper(file);
+      try {
+        xmlParserHelper.checkRootTag("Root");
+        xmlParserHelper.nextTag();
+        sum += xmlParserHelper.getRequiredIntAttribute("value");
+      } finally {
+        xmlParserHelper.close();
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int factoryPerFile() throws Exception {
+    int sum = 0;
+    for (File file : files) {
+      InputStreamReader reader = new InputStreamReader(new FileInputStream(file), Charsets.UTF_8);
+      try {
+        XMLStreamReader stream = XMLInputFactory.newInstance().createXMLStreamReader(reader);
+        stream.nextTag();
+        stream.nextTag();
+        sum += Integer.parseInt(stream.getAttributeValue(null, "value"));
+        stream.close();
+      } finally {
+        reader.close();
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long attributesByName() throws Exception {
+    long sum = 0;
+    XmlParserHelper xmlParserHelper = new XmlParserHelper(report);
+    try {
+      xmlParserHelper.checkRootTag("Root");
+      XMLStreamReader stream = xmlParserHelper.stream();
+      while (xmlParserHelper.nextTag() != null) {
+        sum += intAttributeByName(stream, "sl") + intAttributeByName(stream, "vc") + intAttributeByName(stream, "offset");
+      }
+    } finally {
+      xmlParserHelper.close();
+    }
+    return sum;
+  }
+
+  private static int intAttributeByName(XMLStreamReader stream, String name) {
+    for (int i = 0; i < stream.getAttributeCount(); i++) {
+      if (name.equals(stream.getAttributeLocalName(i))) {
+        return Integer.parseInt(stream.getAttributeValue(i));
+      }
+    }
+    throw new IllegalStateException("Missing attribute " + name);
+  }
+
+  @Benchmark
+  public long attributeHandles() {
+    XmlParserHelper.Attribute line = new XmlParserHelper.Attribute("sl");
+    XmlParserHelper.Attribute visits = new XmlParserHelper.Attribute("vc");
+    XmlParserHelper.Attribute offset = new XmlParserHelper.Attribute("offset");
+
+    long sum = 0;
+    XmlParserHelper xmlParserHelper = new XmlParserHelper(report);
+    try {
+      xmlParserHelper.checkRootTag("Root");
+      while (xmlParserHelper.nextTag() != null) {
+        sum += xmlParserHelper.getRequiredIntAttribute(line) + xmlParserHelper.getRequiredIntAttribute(visits) + xmlParserHelper.getRequiredIntAttribute(offset);
+      }
+    } finally {
+      xmlParserHelper.close();
+    }
+    return sum;
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.io.Closeables;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Binary files of the coverage caches: a magic number and a format version, followed by the content of the file.
+ * They are replaced through a temporary file, so that a reader never sees a partially written one.
+ */
+final class BinaryFiles {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  interface Content {
+
+    void write(DataOutputStream out) throws IOException;
+
+  }
+
+  private BinaryFiles() {
+  }
+
+  public static void write(File file, int magic, int version, Content content) throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Unable to create the directory " + parent.getAbsolutePath());
+    }
+
+    File tmp = new File(parent, file.getName() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE));
+      out.writeInt(magic);
+      out.writeInt(version);
+      content.write(out);
+      out.close();
+      out = null;
+
+      if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+        throw new IOException("Unable to move " + tmp.getAbsolutePath() + " to " + file.getAbsolutePath());
+      }
+    } catch (IOException e) {
+      Closeables.closeQuietly(out);
+      tmp.delete();
+      throw e;
+    }
+  }
+
+  public static InputStream open(File file) throws IOException {
+    return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+  }
+
+  /**
+   * @return false if the file starts with another magic number or format version
+   */
+  public static boolean readHeader(DataInput in, int magic, int version) throws IOException {
+    return in.readInt() == magic && in.readInt() == version;
+  }
+
+}
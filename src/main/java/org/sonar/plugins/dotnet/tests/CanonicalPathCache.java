@@ -0,0 +1,106 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes the canonical paths of the source files referenced by coverage reports across the modules of an analysis,
+ * until {@link #clear()} is called at its end.
+ * The resulting paths are interned, so that all the reports referencing the same source file share the same path instance.
+ * This class is thread-safe.
+ */
+public final class CanonicalPathCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CanonicalPathCache.class);
+  private static final ConcurrentMap<String, String> canonicalPaths = new ConcurrentHashMap<String, String>();
+  private static final ConcurrentMap<String, String> internedPaths = new ConcurrentHashMap<String, String>();
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+  private static final AtomicLong nanos = new AtomicLong();
+
+  private CanonicalPathCache() {
+  }
+
+  public static String canonicalPath(String path) throws IOException {
+    String canonicalPath = canonicalPaths.get(path);
+    if (canonicalPath != null) {
+      hits.incrementAndGet();
+      return canonicalPath;
+    }
+
+    misses.incrementAndGet();
+    long start = System.nanoTime();
+    try {
+      canonicalPath = intern(new File(path).getCanonicalPath());
+    } finally {
+      nanos.addAndGet(System.nanoTime() - start);
+    }
+    String previous = canonicalPaths.putIfAbsent(path, canonicalPath);
+    return previous == null ? canonicalPath : previous;
+  }
+
+  /**
+   * Interns an already canonical path, such as one read back from a coverage snapshot.
+   */
+  public static String intern(String canonicalPath) {
+    String previous = internedPaths.putIfAbsent(canonicalPath, canonicalPath);
+    return previous == null ? canonicalPath : previous;
+  }
+
+  /**
+   * @return the time spent canonicalizing paths since the beginning of the analysis, summed over all threads
+   */
+  public static long nanos() {
+    return nanos.get();
+  }
+
+  public static void logStatistics() {
+    if (hits.get() + misses.get() > 0) {
+      LOG.info(statistics());
+    }
+  }
+
+  @VisibleForTesting
+  static String statistics() {
+    long currentHits = hits.get();
+    long currentMisses = misses.get();
+    long total = currentHits + currentMisses;
+    return "Canonical path cache: " + currentHits + " hits, " + currentMisses + " misses ("
+      + (total == 0 ? 0 : currentHits * 100 / total) + "% hit rate), " + canonicalPaths.size() + " entries";
+  }
+
+  public static void clear() {
+    canonicalPaths.clear();
+    internedPaths.clear();
+    hits.set(0);
+    misses.set(0);
+    nanos.set(0);
+  }
+
+}
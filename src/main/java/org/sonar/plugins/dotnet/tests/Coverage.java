@@ -19,35 +19,128 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
+import com.google.common.collect.Maps;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
-public class Coverage {
+public class Coverage implements CoverageView {
 
-  protected final Table<String, Integer, Integer> hitsByLineAndFile = HashBasedTable.create();
+  private final Map<String, LineHits> hitsByFile = Maps.newHashMap();
+  private int cellCount;
 
   public void addHits(String file, int line, int hits) {
-    Integer oldHits = hitsByLineAndFile.get(file, line);
+    LineHits lineHits = lineHits(file);
+    int cells = lineHits.cellCount();
+    lineHits.add(line, hits);
+    cellCount += lineHits.cellCount() - cells;
+  }
+
+  /**
+   * Records one more branch condition of the given line, as found in a single report.
+   */
+  public void appendCondition(String file, int line, boolean covered) {
+    LineHits lineHits = lineHits(file);
+    int cells = lineHits.cellCount();
+    lineHits.appendCondition(line, covered);
+    cellCount += lineHits.cellCount() - cells;
+  }
+
+  /**
+   * Merges the conditions of a line, as found in another report of the same code.
+   */
+  public void addConditions(String file, int line, int conditions, long coveredConditionsMask) {
+    LineHits lineHits = lineHits(file);
+    int cells = lineHits.cellCount();
+    lineHits.addConditions(line, conditions, coveredConditionsMask);
+    cellCount += lineHits.cellCount() - cells;
+  }
+
+  @Override
+  public void materialize(Collection<String> files) {
+    // All the hits are already in memory
+  }
+
+  /**
+   * Adds the hits and merges the conditions of another coverage, which is copied file by file when it is not held in memory.
+   */
+  public void add(CoverageView other) {
+    if (other instanceof Coverage) {
+      ((Coverage) other).addTo(this);
+      return;
+    }
+
+    other.materialize(other.files());
+    for (String file : other.files()) {
+      for (Map.Entry<Integer, Integer> entry : other.hits(file).entrySet()) {
+        addHits(file, entry.getKey(), entry.getValue());
+      }
+      Map<Integer, Integer> conditions = other.conditions(file);
+      for (Map.Entry<Integer, Long> entry : other.coveredConditionsMasks(file).entrySet()) {
+        addConditions(file, entry.getKey(), conditions.get(entry.getKey()), entry.getValue());
+      }
+    }
+  }
 
-    int newHits;
-    if (oldHits == null) {
-      newHits = hits;
-    } else {
-      newHits = hits + oldHits;
+  private void addTo(Coverage target) {
+    for (Map.Entry<String, LineHits> entry : hitsByFile.entrySet()) {
+      target.addAll(entry.getKey(), entry.getValue());
     }
+  }
 
-    hitsByLineAndFile.put(file, line, newHits);
+  void addAll(String file, LineHits lineHits) {
+    LineHits target = lineHits(file);
+    int cells = target.cellCount();
+    target.addAll(lineHits);
+    cellCount += target.cellCount() - cells;
   }
 
+  @Override
   public Set<String> files() {
-    return hitsByLineAndFile.rowKeySet();
+    return Collections.unmodifiableSet(hitsByFile.keySet());
+  }
+
+  /**
+   * @return the number of lines with hits plus the number of lines with conditions, maintained as they are added
+   */
+  @Override
+  public int cellCount() {
+    return cellCount;
   }
 
+  @Override
   public Map<Integer, Integer> hits(String file) {
-    return hitsByLineAndFile.row(file);
+    LineHits lineHits = hitsByFile.get(file);
+    return lineHits == null ? Collections.<Integer, Integer>emptyMap() : lineHits.asMap();
+  }
+
+  @Override
+  public Map<Integer, Integer> conditions(String file) {
+    LineHits lineHits = hitsByFile.get(file);
+    return lineHits == null ? Collections.<Integer, Integer>emptyMap() : lineHits.conditionsAsMap(false);
+  }
+
+  @Override
+  public Map<Integer, Integer> coveredConditions(String file) {
+    LineHits lineHits = hitsByFile.get(file);
+    return lineHits == null ? Collections.<Integer, Integer>emptyMap() : lineHits.conditionsAsMap(true);
+  }
+
+  @Override
+  public Map<Integer, Long> coveredConditionsMasks(String file) {
+    LineHits lineHits = hitsByFile.get(file);
+    return lineHits == null ? Collections.<Integer, Long>emptyMap() : lineHits.coveredConditionsMasksAsMap();
+  }
+
+  private LineHits lineHits(String file) {
+    LineHits lineHits = hitsByFile.get(file);
+    if (lineHits == null) {
+      lineHits = new LineHits();
+      hitsByFile.put(file, lineHits);
+    }
+    return lineHits;
   }
 
 }
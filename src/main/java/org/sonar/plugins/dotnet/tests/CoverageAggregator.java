@@ -21,13 +21,28 @@ package org.sonar.plugins.dotnet.tests;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.config.Settings;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class CoverageAggregator implements BatchExtension {
 
+  public static final String PARALLELISM_PROPERTY_KEY = "sonar.dotnet.coverage.parallelism";
+
+  private static final Logger LOG = LoggerFactory.getLogger(CoverageAggregator.class);
+
   private final CoverageConfiguration coverageConf;
   private final Settings settings;
   private final NCover3ReportParser ncover3ReportParser;
@@ -39,7 +54,8 @@ public class CoverageAggregator implements BatchExtension {
     this(coverageConf, settings,
       new NCover3ReportParser(),
       new OpenCoverReportParser(),
-      new DotCoverReportsAggregator(new DotCoverReportParser()), new VisualStudioCoverageXmlReportParser());
+      new DotCoverReportsAggregator(new DotCoverReportParser(), new DotCoverDetailedXmlReportParser(), parallelism(settings)),
+      new VisualStudioCoverageXmlReportParser());
   }
 
   @VisibleForTesting
@@ -57,6 +73,10 @@ public class CoverageAggregator implements BatchExtension {
     this.visualStudioCoverageXmlReportParser = visualStudioCoverageXmlReportParser;
   }
 
+  private static int parallelism(Settings settings) {
+    return settings.hasKey(PARALLELISM_PROPERTY_KEY) ? settings.getInt(PARALLELISM_PROPERTY_KEY) : 1;
+  }
+
   public boolean hasCoverageProperty() {
     return hasNCover3ReportPaths() || hasOpenCoverReportPaths() || hasDotCoverReportPaths() || hasVisualStudioCoverageXmlReportPaths();
   }
@@ -77,28 +97,190 @@ public class CoverageAggregator implements BatchExtension {
     return settings.hasKey(coverageConf.visualStudioCoverageXmlPropertyKey());
   }
 
+  /**
+   * @return the report files which would be parsed, in the order in which they would be
+   */
+  public List<File> reportFiles(WildcardPatternFileProvider wildcardPatternFileProvider) {
+    List<String> patterns = Lists.newArrayList();
+    for (String toolKey : ImmutableList.of(coverageConf.ncover3PropertyKey(), coverageConf.openCoverPropertyKey(), coverageConf.dotCoverPropertyKey(),
+      coverageConf.visualStudioCoverageXmlPropertyKey())) {
+      if (settings.hasKey(toolKey)) {
+        patterns.addAll(reportPathPatterns(settings.getString(toolKey)));
+      }
+    }
+
+    List<File> files = Lists.newArrayList();
+    for (Set<File> patternFiles : wildcardPatternFileProvider.listFiles(patterns).values()) {
+      files.addAll(patternFiles);
+    }
+    return files;
+  }
+
   public Coverage aggregate(WildcardPatternFileProvider wildcardPatternFileProvider, Coverage coverage) {
-    aggregateIfNeeded(wildcardPatternFileProvider, coverage, coverageConf.ncover3PropertyKey(), ncover3ReportParser);
-    aggregateIfNeeded(wildcardPatternFileProvider, coverage, coverageConf.openCoverPropertyKey(), openCoverReportParser);
-    aggregateIfNeeded(wildcardPatternFileProvider, coverage, coverageConf.dotCoverPropertyKey(), dotCoverReportsAggregator);
-    aggregateIfNeeded(wildcardPatternFileProvider, coverage, coverageConf.visualStudioCoverageXmlPropertyKey(), visualStudioCoverageXmlReportParser);
+    return aggregate(wildcardPatternFileProvider, coverage, ImportMetrics.current("Coverage"));
+  }
+
+  public Coverage aggregate(WildcardPatternFileProvider wildcardPatternFileProvider, Coverage coverage, ImportMetrics importMetrics) {
+    Map<File, PersistentCoverageCache> persistedReports = Maps.newLinkedHashMap();
+    List<ParallelCoverageParsing.Task> reports = reports(wildcardPatternFileProvider, importMetrics, persistedReports);
+    CoverageManifest manifest = null;
+    List<ReportFingerprint> fingerprints = null;
+    if (!persistedReports.isEmpty()) {
+      manifest = CoverageManifest.read(CoverageManifest.file(persistedReports.values().iterator().next().directory(), persistedReportPathPatterns()));
+      fingerprints = compareWithManifest(persistedReports, manifest);
+    }
+
+    int parallelism = parallelism(settings);
+    if (parallelism > 1 && reports.size() > 1) {
+      int threads = Math.min(parallelism, reports.size());
+      LOG.info("Parsing " + reports.size() + " coverage reports using " + threads + " threads");
+      ParallelCoverageParsing.parse(reports, coverage, threads, "coverage-parser");
+    } else {
+      for (ParallelCoverageParsing.Task report : reports) {
+        report.parse(coverage);
+      }
+    }
+
+    if (manifest != null && fingerprints != null) {
+      manifest.write(fingerprints);
+    }
+
     return coverage;
   }
 
-  private void aggregateIfNeeded(WildcardPatternFileProvider wildcardPatternFileProvider, Coverage coverage, String toolKey, CoverageParser parser) {
-    if (settings.hasKey(toolKey)) {
-      boolean useCache = settings.getBoolean(toolKey + ".useCache");
-      CoverageParser realParser = useCache ? new CoverageParserCache(parser) : parser;
-      aggregate(wildcardPatternFileProvider, settings.getString(toolKey), realParser, coverage);
+  /**
+   * Only the new and changed reports are parsed again, the others being loaded from their persisted entries.
+   * The entries of the reports removed from every manifest are deleted: their contribution cannot be subtracted from merged hits and conditions,
+   * so the aggregate is always rebuilt from the entries of the current reports.
+   *
+   * @return the fingerprints of the current reports, or null if one of them cannot be computed
+   */
+  @Nullable
+  private static List<ReportFingerprint> compareWithManifest(Map<File, PersistentCoverageCache> persistedReports, CoverageManifest manifest) {
+    List<ReportFingerprint> fingerprints = Lists.newArrayList();
+    for (Map.Entry<File, PersistentCoverageCache> entry : persistedReports.entrySet()) {
+      try {
+        fingerprints.add(entry.getValue().fingerprint(entry.getKey()));
+      } catch (IOException e) {
+        LOG.warn("Unable to fingerprint the coverage report " + entry.getKey().getAbsolutePath() + ", the coverage manifest will not be updated", e);
+        return null;
+      }
+    }
+
+    CoverageManifest.Changes changes = manifest.compare(fingerprints);
+    LOG.info("Incremental coverage import: " + changes);
+    PersistentCoverageCache persistentCache = persistedReports.values().iterator().next();
+    if (!changes.removed().isEmpty()) {
+      Set<String> otherReports = manifest.reportsOfOtherManifests();
+      for (String removed : changes.removed()) {
+        if (otherReports.contains(removed)) {
+          LOG.debug("Keeping the persisted coverage of the removed report " + removed + ", which another module still imports");
+        } else {
+          LOG.debug("Deleting the persisted coverage of the removed report " + removed);
+          persistentCache.remove(removed);
+        }
+      }
     }
+    return fingerprints;
   }
 
-  private void aggregate(WildcardPatternFileProvider wildcardPatternFileProvider, String reportPaths, CoverageParser parser, Coverage coverage) {
-    for (String reportPathPattern : Splitter.on(',').trimResults().omitEmptyStrings().split(reportPaths)) {
-      for (File reportFile : wildcardPatternFileProvider.listFiles(reportPathPattern)) {
-        parser.parse(reportFile, coverage);
+  private String persistedReportPathPatterns() {
+    StringBuilder sb = new StringBuilder();
+    for (String toolKey : ImmutableList.of(coverageConf.ncover3PropertyKey(), coverageConf.openCoverPropertyKey(), coverageConf.dotCoverPropertyKey(),
+      coverageConf.visualStudioCoverageXmlPropertyKey())) {
+      if (settings.hasKey(toolKey) && settings.getBoolean(toolKey + ".useCache") && settings.getBoolean(toolKey + ".persistentCache")) {
+        sb.append(toolKey).append('=').append(settings.getString(toolKey)).append('\n');
       }
     }
+    return sb.toString();
+  }
+
+  /**
+   * Only indexes the covered files, their hits being loaded again on demand.
+   * The reports are loaded sequentially and bypass the caches, which would keep all their hits in memory,
+   * and are recorded in the import metrics of the module which needs them.
+   */
+  public LazyCoverage aggregateLazily(WildcardPatternFileProvider wildcardPatternFileProvider) {
+    return new LazyCoverage(reports(wildcardPatternFileProvider, null, Maps.<File, PersistentCoverageCache>newHashMap(), false)).index();
+  }
+
+  private List<ParallelCoverageParsing.Task> reports(WildcardPatternFileProvider wildcardPatternFileProvider, @Nullable ImportMetrics importMetrics,
+    Map<File, PersistentCoverageCache> persistedReports) {
+    return reports(wildcardPatternFileProvider, importMetrics, persistedReports, true);
+  }
+
+  /**
+   * @param importMetrics the metrics of the parsings, or null to use the ones which are current at each parsing
+   * @param persistedReports filled with the reports whose coverage is persisted, and their persistent cache
+   * @param cached whether the reports are parsed through the caches enabled by the settings
+   */
+  private List<ParallelCoverageParsing.Task> reports(WildcardPatternFileProvider wildcardPatternFileProvider, @Nullable ImportMetrics importMetrics,
+    Map<File, PersistentCoverageCache> persistedReports, boolean cached) {
+    Map<String, CoverageParser> parsers = Maps.newLinkedHashMap();
+    Map<String, PersistentCoverageCache> persistentCaches = Maps.newHashMap();
+    addIfNeeded(parsers, persistentCaches, coverageConf.ncover3PropertyKey(), ncover3ReportParser, importMetrics, cached);
+    addIfNeeded(parsers, persistentCaches, coverageConf.openCoverPropertyKey(), openCoverReportParser, importMetrics, cached);
+    addIfNeeded(parsers, persistentCaches, coverageConf.dotCoverPropertyKey(), dotCoverReportsAggregator, importMetrics, cached);
+    addIfNeeded(parsers, persistentCaches, coverageConf.visualStudioCoverageXmlPropertyKey(), visualStudioCoverageXmlReportParser, importMetrics, cached);
+
+    List<String> patterns = Lists.newArrayList();
+    for (String toolKey : parsers.keySet()) {
+      patterns.addAll(reportPathPatterns(settings.getString(toolKey)));
+    }
+    Map<String, Set<File>> filesByPattern = wildcardPatternFileProvider.listFiles(patterns);
+
+    List<ParallelCoverageParsing.Task> reports = Lists.newArrayList();
+    for (Map.Entry<String, CoverageParser> entry : parsers.entrySet()) {
+      for (String reportPathPattern : reportPathPatterns(settings.getString(entry.getKey()))) {
+        for (File reportFile : filesByPattern.get(reportPathPattern)) {
+          reports.add(new ParallelCoverageParsing.Task(entry.getValue(), reportFile));
+          if (persistentCaches.containsKey(entry.getKey())) {
+            persistedReports.put(reportFile, persistentCaches.get(entry.getKey()));
+          }
+        }
+      }
+    }
+    return reports;
+  }
+
+  private void addIfNeeded(Map<String, CoverageParser> parsers, Map<String, PersistentCoverageCache> persistentCaches, String toolKey, CoverageParser parser,
+    @Nullable ImportMetrics importMetrics, boolean cached) {
+    if (settings.hasKey(toolKey)) {
+      boolean useCache = cached && settings.getBoolean(toolKey + ".useCache");
+      PersistentCoverageCache persistentCache = useCache ? persistentCache(toolKey) : null;
+      if (persistentCache != null) {
+        persistentCaches.put(toolKey, persistentCache);
+      }
+      CoverageParser realParser = useCache ? new CoverageParserCache(parser, persistentCache, maxCachedCells()) : parser;
+      String parserName = parser.getClass().getSimpleName();
+      parsers.put(toolKey, importMetrics == null ?
+        ImportMetrics.instrumentCurrent("Coverage", parserName, realParser) :
+        importMetrics.instrument(parserName, realParser));
+    }
+  }
+
+  private long maxCachedCells() {
+    return settings.hasKey(CoverageParserCache.MAX_CELLS_PROPERTY_KEY) ?
+      settings.getLong(CoverageParserCache.MAX_CELLS_PROPERTY_KEY) :
+      CoverageParserCache.DEFAULT_MAX_CELLS;
+  }
+
+  @Nullable
+  private PersistentCoverageCache persistentCache(String toolKey) {
+    if (!settings.getBoolean(toolKey + ".persistentCache")) {
+      return null;
+    }
+
+    String workingDirectory = settings.hasKey(PersistentCoverageCache.WORKING_DIRECTORY_PROPERTY_KEY) ?
+      settings.getString(PersistentCoverageCache.WORKING_DIRECTORY_PROPERTY_KEY) :
+      PersistentCoverageCache.DEFAULT_WORKING_DIRECTORY;
+    return new PersistentCoverageCache(
+      new File(workingDirectory, PersistentCoverageCache.CACHE_FOLDER),
+      settings.getBoolean(toolKey + ".persistentCache.contentHash"));
+  }
+
+  private static List<String> reportPathPatterns(String reportPaths) {
+    return Lists.newArrayList(Splitter.on(',').trimResults().omitEmptyStrings().split(reportPaths));
   }
 
 }
@@ -0,0 +1,160 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of a {@link Coverage}: file paths followed by zigzag varint delta encoded lines and hits,
+ * then by the delta encoded lines having conditions with their conditions and covered conditions mask.
+ */
+class CoverageCodec {
+
+  private CoverageCodec() {
+  }
+
+  public static void write(Coverage coverage, DataOutput out) throws IOException {
+    writeVarInt(out, coverage.files().size());
+    for (String file : coverage.files()) {
+      out.writeUTF(file);
+      writeFile(coverage, file, out);
+    }
+  }
+
+  /**
+   * Writes the hits and conditions of a single file, without its path.
+   */
+  public static void writeFile(Coverage coverage, String file, DataOutput out) throws IOException {
+    Map<Integer, Integer> hits = coverage.hits(file);
+    writeVarInt(out, hits.size());
+
+    int previousLine = 0;
+    for (Map.Entry<Integer, Integer> entry : hits.entrySet()) {
+      int line = entry.getKey();
+      writeSignedVarInt(out, line - previousLine);
+      writeSignedVarInt(out, entry.getValue());
+      previousLine = line;
+    }
+
+    Map<Integer, Integer> conditions = coverage.conditions(file);
+    Map<Integer, Long> coveredConditionsMasks = coverage.coveredConditionsMasks(file);
+    writeVarInt(out, conditions.size());
+
+    previousLine = 0;
+    for (Map.Entry<Integer, Integer> entry : conditions.entrySet()) {
+      int line = entry.getKey();
+      writeVarInt(out, line - previousLine);
+      writeVarInt(out, entry.getValue());
+      writeVarLong(out, coveredConditionsMasks.get(line));
+      previousLine = line;
+    }
+  }
+
+  public static void read(DataInput in, Coverage coverage) throws IOException {
+    int files = readVarInt(in);
+    for (int i = 0; i < files; i++) {
+      String file = in.readUTF();
+      LineHits lineHits = new LineHits();
+      readFile(in, lineHits);
+      coverage.addAll(file, lineHits);
+    }
+  }
+
+  /**
+   * Reads the hits and conditions of a single file, as written by {@link #writeFile(Coverage, String, DataOutput)}.
+   */
+  public static void readFile(DataInput in, LineHits lineHits) throws IOException {
+    int lines = readVarInt(in);
+    int line = 0;
+    for (int i = 0; i < lines; i++) {
+      line += readSignedVarInt(in);
+      lineHits.add(line, readSignedVarInt(in));
+    }
+
+    int conditionLines = readVarInt(in);
+    line = 0;
+    for (int i = 0; i < conditionLines; i++) {
+      line += readVarInt(in);
+      int conditions = readVarInt(in);
+      lineHits.addConditions(line, conditions, readVarLong(in));
+    }
+  }
+
+  public static void writeVarInt(DataOutput out, int value) throws IOException {
+    int remaining = value;
+    while ((remaining & ~0x7F) != 0) {
+      out.writeByte((remaining & 0x7F) | 0x80);
+      remaining >>>= 7;
+    }
+    out.writeByte(remaining);
+  }
+
+  public static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      if (shift > 28) {
+        throw new IOException("Malformed variable length integer");
+      }
+      b = in.readByte();
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  public static void writeVarLong(DataOutput out, long value) throws IOException {
+    long remaining = value;
+    while ((remaining & ~0x7FL) != 0) {
+      out.writeByte((int) ((remaining & 0x7F) | 0x80));
+      remaining >>>= 7;
+    }
+    out.writeByte((int) remaining);
+  }
+
+  public static long readVarLong(DataInput in) throws IOException {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      if (shift > 63) {
+        throw new IOException("Malformed variable length long");
+      }
+      b = in.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  public static void writeSignedVarInt(DataOutput out, int value) throws IOException {
+    writeVarInt(out, (value << 1) ^ (value >> 31));
+  }
+
+  public static int readSignedVarInt(DataInput in) throws IOException {
+    int value = readVarInt(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.Ordering;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Sorted index of the files of a coverage, to only visit the ones located under a given directory.
+ * Prefixes are matched case-insensitively, as report paths do not always have the same case as the file system:
+ * false positives are filtered out when resolving the files anyway.
+ */
+class CoverageFileIndex {
+
+  private static final Comparator<String> ORDER = Ordering.from(String.CASE_INSENSITIVE_ORDER).compound(Ordering.<String>natural());
+
+  private final TreeSet<String> files = new TreeSet<String>(ORDER);
+
+  public CoverageFileIndex(Collection<String> files) {
+    this.files.addAll(files);
+  }
+
+  public Set<String> filesUnder(String canonicalDirectoryPath) {
+    String prefix = canonicalDirectoryPath.endsWith(File.separator) ? canonicalDirectoryPath : (canonicalDirectoryPath + File.separator);
+    return Collections.unmodifiableSet(files.subSet(prefix, true, prefix + Character.MAX_VALUE, true));
+  }
+
+  public int size() {
+    return files.size();
+  }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fingerprints of the reports imported by the previous analysis, stored next to their {@link PersistentCoverageCache} entries.
+ * Comparing them with the current reports tells which ones must be parsed again, and which entries are no longer needed.
+ */
+public class CoverageManifest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CoverageManifest.class);
+
+  private static final int MAGIC = 0x444E434D;
+  private static final int VERSION = 1;
+  private static final String FILE_PREFIX = "manifest-";
+  private static final String FILE_SUFFIX = ".bin";
+
+  private final File file;
+  private final Map<String, ReportFingerprint> fingerprints;
+
+  private CoverageManifest(File file, Map<String, ReportFingerprint> fingerprints) {
+    this.file = file;
+    this.fingerprints = fingerprints;
+  }
+
+  /**
+   * The manifest of a given set of report path patterns, so that modules importing other reports keep their own manifest.
+   */
+  public static File file(File directory, String reportPathPatterns) {
+    return new File(directory, FILE_PREFIX + ReportFingerprint.pathHash(reportPathPatterns) + FILE_SUFFIX);
+  }
+
+  /**
+   * @return an empty manifest if the file does not exist or cannot be read
+   */
+  public static CoverageManifest read(File file) {
+    Map<String, ReportFingerprint> fingerprints = Maps.newLinkedHashMap();
+    if (!file.isFile()) {
+      return new CoverageManifest(file, fingerprints);
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(BinaryFiles.open(file));
+      if (!BinaryFiles.readHeader(in, MAGIC, VERSION)) {
+        LOG.debug("Ignoring the coverage manifest with an unknown format: " + file.getAbsolutePath());
+        return new CoverageManifest(file, fingerprints);
+      }
+
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        ReportFingerprint fingerprint = ReportFingerprint.read(in);
+        fingerprints.put(fingerprint.path(), fingerprint);
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to read the coverage manifest " + file.getAbsolutePath() + ", all the reports will be considered as new", e);
+      fingerprints.clear();
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+    return new CoverageManifest(file, fingerprints);
+  }
+
+  public Changes compare(Collection<ReportFingerprint> reports) {
+    Changes changes = new Changes();
+    Map<String, ReportFingerprint> removed = Maps.newLinkedHashMap(fingerprints);
+    for (ReportFingerprint report : reports) {
+      ReportFingerprint previous = removed.remove(report.path());
+      if (previous == null) {
+        changes.added++;
+      } else if (previous.equals(report)) {
+        changes.unchanged++;
+      } else {
+        changes.changed++;
+      }
+    }
+    changes.removed.addAll(removed.keySet());
+    return changes;
+  }
+
+  /**
+   * The entries are shared by the modules importing the same reports, so an entry removed from this manifest
+   * may still be needed by the manifest of another module.
+   *
+   * @return the paths of the reports listed by the other manifests of the same directory
+   */
+  public Set<String> reportsOfOtherManifests() {
+    Set<String> reports = Sets.newHashSet();
+    File[] manifests = file.getAbsoluteFile().getParentFile().listFiles();
+    if (manifests != null) {
+      for (File manifest : manifests) {
+        if (manifest.getName().startsWith(FILE_PREFIX) && manifest.getName().endsWith(FILE_SUFFIX) && !manifest.equals(file.getAbsoluteFile())) {
+          reports.addAll(read(manifest).fingerprints.keySet());
+        }
+      }
+    }
+    return reports;
+  }
+
+  /**
+   * Replaces the manifest with the given fingerprints, once their reports have been imported.
+   */
+  public void write(final Collection<ReportFingerprint> reports) {
+    try {
+      BinaryFiles.write(file, MAGIC, VERSION, new BinaryFiles.Content() {
+        @Override
+        public void write(DataOutputStream out) throws IOException {
+          out.writeInt(reports.size());
+          for (ReportFingerprint report : reports) {
+            report.write(out);
+          }
+        }
+      });
+    } catch (IOException e) {
+      LOG.warn("Unable to write the coverage manifest " + file.getAbsolutePath(), e);
+    }
+  }
+
+  public static class Changes {
+
+    private int added;
+    private int changed;
+    private int unchanged;
+    private final List<String> removed = Lists.newArrayList();
+
+    public List<String> removed() {
+      return ImmutableList.copyOf(removed);
+    }
+
+    @Override
+    public String toString() {
+      return added + " new, " + changed + " changed, " + unchanged + " unchanged and " + removed.size() + " removed reports";
+    }
+
+  }
+
+}
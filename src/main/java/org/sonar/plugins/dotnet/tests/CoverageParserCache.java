@@ -20,54 +20,214 @@
 package org.sonar.plugins.dotnet.tests;
 
 import com.google.common.annotations.VisibleForTesting;
-
-import com.google.common.collect.Table.Cell;
+import com.google.common.base.Throwables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
-import com.google.common.collect.Maps;
-
+/**
+ * Caches parsed coverage reports across the modules of an analysis.
+ * Entries are evicted in least recently used order once the total number of cached file/line cells exceeds the configured limit.
+ * This class is thread-safe: concurrent requests for the same report are served by a single parsing.
+ */
 public class CoverageParserCache implements CoverageParser {
 
+  public static final String MAX_CELLS_PROPERTY_KEY = "sonar.dotnet.coverageCache.maxCells";
+  public static final long DEFAULT_MAX_CELLS = 10000000L;
+
   private static final Logger LOG = LoggerFactory.getLogger(CoverageParserCache.class);
-  private final static Map<String, CachedCoverage> cache = Maps.newHashMap();
+  private final static Map<String, CachedCoverage> cache = new LinkedHashMap<String, CachedCoverage>(16, 0.75f, true);
+  private final static ConcurrentMap<String, Future<CachedCoverage>> loading = new ConcurrentHashMap<String, Future<CachedCoverage>>();
+  private static long cachedCells;
+  private static long hits;
+  private static long misses;
+  private static long evictions;
+
   private final CoverageParser wrappedParser;
+  private final PersistentCoverageCache persistentCache;
+  private final long maxCells;
 
   public CoverageParserCache(CoverageParser wrappedParser) {
+    this(wrappedParser, null);
+  }
+
+  public CoverageParserCache(CoverageParser wrappedParser, @Nullable PersistentCoverageCache persistentCache) {
+    this(wrappedParser, persistentCache, DEFAULT_MAX_CELLS);
+  }
+
+  public CoverageParserCache(CoverageParser wrappedParser, @Nullable PersistentCoverageCache persistentCache, long maxCells) {
     super();
     this.wrappedParser = wrappedParser;
+    this.persistentCache = persistentCache;
+    this.maxCells = maxCells;
   }
 
   @Override
   public void parse(File file, Coverage coverage) {
     String path = file.getAbsolutePath();
-    CachedCoverage cachedCoverage = cache.get(path);
+    CachedCoverage cachedCoverage = getIfPresent(path);
     if (cachedCoverage == null) {
-      cachedCoverage = new CachedCoverage();
-      wrappedParser.parse(file, cachedCoverage);
-      cache.put(path, cachedCoverage);
-      LOG.info("Caching coverage parsing for " + path);
+      cachedCoverage = getOrLoad(file, path);
     } else {
       LOG.info("Reusing cached coverage parsing for " + path);
     }
     cachedCoverage.mergeTo(coverage);
   }
 
+  @Nullable
+  private static CachedCoverage getIfPresent(String path) {
+    synchronized (cache) {
+      CachedCoverage cachedCoverage = cache.get(path);
+      if (cachedCoverage != null) {
+        hits++;
+      }
+      return cachedCoverage;
+    }
+  }
+
+  private CachedCoverage getOrLoad(final File file, String path) {
+    FutureTask<CachedCoverage> task = new FutureTask<CachedCoverage>(new Callable<CachedCoverage>() {
+      @Override
+      public CachedCoverage call() {
+        return load(file);
+      }
+    });
+
+    Future<CachedCoverage> inFlight = loading.putIfAbsent(path, task);
+    if (inFlight != null) {
+      LOG.info("Waiting for the concurrent coverage parsing of " + path);
+      synchronized (cache) {
+        hits++;
+      }
+      return await(inFlight);
+    }
+
+    try {
+      // Another thread may have completed the parsing between the cache lookup and the registration of this task
+      CachedCoverage cachedCoverage = getIfPresent(path);
+      if (cachedCoverage != null) {
+        return cachedCoverage;
+      }
+
+      synchronized (cache) {
+        misses++;
+      }
+      task.run();
+      cachedCoverage = await(task);
+      put(path, cachedCoverage);
+      return cachedCoverage;
+    } finally {
+      loading.remove(path, task);
+    }
+  }
+
+  private static CachedCoverage await(Future<CachedCoverage> task) {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private CachedCoverage load(File file) {
+    CachedCoverage cachedCoverage = new CachedCoverage();
+    ReportFingerprint fingerprint = persistentCache == null ? null : fingerprint(file);
+    if (fingerprint != null && persistentCache.load(fingerprint, cachedCoverage)) {
+      LOG.info("Reusing persisted coverage parsing for " + file.getAbsolutePath());
+    } else {
+      wrappedParser.parse(file, cachedCoverage);
+      if (fingerprint != null) {
+        persistentCache.save(fingerprint, cachedCoverage);
+      }
+    }
+    cachedCoverage.weight = cachedCoverage.cellCount();
+    return cachedCoverage;
+  }
+
+  @Nullable
+  private ReportFingerprint fingerprint(File file) {
+    try {
+      return persistentCache.fingerprint(file);
+    } catch (IOException e) {
+      LOG.warn("Unable to fingerprint " + file.getAbsolutePath() + ", its coverage will not be persisted", e);
+      return null;
+    }
+  }
+
+  private void put(String path, CachedCoverage cachedCoverage) {
+    if (cachedCoverage.weight > maxCells) {
+      LOG.info("Not caching the coverage parsing for " + path + ": its " + cachedCoverage.weight + " cells exceed the limit of " + maxCells);
+      return;
+    }
+
+    LOG.info("Caching coverage parsing for " + path);
+    synchronized (cache) {
+      CachedCoverage previous = cache.put(path, cachedCoverage);
+      if (previous != null) {
+        cachedCells -= previous.weight;
+      }
+      cachedCells += cachedCoverage.weight;
+
+      Iterator<Map.Entry<String, CachedCoverage>> it = cache.entrySet().iterator();
+      while (cachedCells > maxCells && it.hasNext()) {
+        Map.Entry<String, CachedCoverage> eldest = it.next();
+        it.remove();
+        cachedCells -= eldest.getValue().weight;
+        evictions++;
+        LOG.debug("Evicting the cached coverage parsing for " + eldest.getKey());
+      }
+    }
+  }
+
+  public static void logStatistics() {
+    synchronized (cache) {
+      if (hits + misses > 0) {
+        LOG.info(statistics());
+      }
+    }
+  }
+
+  @VisibleForTesting
+  static String statistics() {
+    synchronized (cache) {
+      return "Coverage parser cache: " + hits + " hits, " + misses + " misses, " + evictions + " evictions, "
+        + cache.size() + " entries holding " + cachedCells + " cells";
+    }
+  }
+
   @VisibleForTesting
   static void clear() {
-    cache.clear();
+    synchronized (cache) {
+      cache.clear();
+      cachedCells = 0;
+      hits = 0;
+      misses = 0;
+      evictions = 0;
+    }
   }
 
   private class CachedCoverage extends Coverage {
 
+    private int weight;
+
     public void mergeTo(Coverage coverage) {
-      //coverage.hitsByLineAndFile.putAll(this.hitsByLineAndFile);
-      for (Cell<String, Integer, Integer> cell : this.hitsByLineAndFile.cellSet()) {
-        coverage.addHits(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
-      }
+      coverage.add(this);
     }
   }
 }
@@ -20,6 +20,7 @@
 package org.sonar.plugins.dotnet.tests;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import org.slf4j.Logger;
@@ -30,29 +31,51 @@ import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoverageMeasuresBuilder;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.resources.Project;
+import org.sonar.api.scan.filesystem.ModuleFileSystem;
+
+import javax.annotation.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public class CoverageReportImportSensor implements Sensor {
   private static final Logger LOG = LoggerFactory.getLogger(CoverageReportImportSensor.class);
 
-  private static final Map<String, Coverage> cachedCoverage = Maps.newHashMap();
+  /**
+   * Suffix of the global cache key of the property giving the path of a coverage snapshot shared by successive analyses.
+   */
+  public static final String SNAPSHOT_PROPERTY_SUFFIX = ".snapshot";
+
+  private static final Map<String, CoverageView> cachedCoverage = Maps.newHashMap();
+  private static final Map<String, CoverageFileIndex> cachedCoverageFileIndexes = Maps.newHashMap();
 
   private final WildcardPatternFileProvider wildcardPatternFileProvider = new WildcardPatternFileProvider(new File("."), File.separator);
   private final CoverageConfiguration coverageConf;
   private final CoverageAggregator coverageAggregator;
   private final Settings settings;
+  private final ModuleFileSystem fileSystem;
 
   @VisibleForTesting
   static void clearCache() {
-    cachedCoverage.clear();;
+    cachedCoverage.clear();
+    cachedCoverageFileIndexes.clear();
   }
 
   public CoverageReportImportSensor(Settings settings, CoverageConfiguration coverageConf, CoverageAggregator coverageAggregator) {
+    this(settings, coverageConf, coverageAggregator, null);
+  }
+
+  /**
+   * @param fileSystem gives the module base directory, outside of which the covered files are not even looked up
+   */
+  public CoverageReportImportSensor(Settings settings, CoverageConfiguration coverageConf, CoverageAggregator coverageAggregator, @Nullable ModuleFileSystem fileSystem) {
     this.coverageConf = coverageConf;
     this.coverageAggregator = coverageAggregator;
     this.settings = settings;
+    this.fileSystem = fileSystem;
   }
 
   @Override
@@ -62,7 +85,14 @@ public class CoverageReportImportSensor implements Sensor {
 
   @Override
   public void analyse(Project project, SensorContext context) {
-    analyze(context, new FileProvider(project, context));
+    try {
+      analyze(context, new FileProvider(project, context, fileSystem == null ? null : fileSystem.baseDir()));
+    } finally {
+      if (project.isRoot()) {
+        // The root module is analyzed last
+        CanonicalPathCache.clear();
+      }
+    }
   }
 
   @VisibleForTesting
@@ -72,36 +102,84 @@ public class CoverageReportImportSensor implements Sensor {
 
   @VisibleForTesting
   void analyze(SensorContext context, FileProvider fileProvider, Coverage coverage) {
-    Coverage usedCoverage = coverage;
-    boolean aggregate = true;
+    CoverageView usedCoverage = null;
+    CoverageFileIndex coverageFileIndex = null;
     if (settings.getBoolean(coverageConf.globalCacheKey())) {
-      Coverage c = cachedCoverage.get(coverageConf.globalCacheKey());
+      CoverageView c = cachedCoverage.get(coverageConf.globalCacheKey());
       if (c == null) {
-        cachedCoverage.put(coverageConf.globalCacheKey(), usedCoverage);
+        c = attachSnapshot();
+        if (c != null) {
+          cachedCoverage.put(coverageConf.globalCacheKey(), c);
+          cachedCoverageFileIndexes.put(coverageConf.globalCacheKey(), new CoverageFileIndex(c.files()));
+        }
+      }
+      if (c == null) {
+        cachedCoverage.put(coverageConf.globalCacheKey(), coverage);
       } else {
         LOG.info("Reusing global cached coverage");
-        aggregate = false;
         usedCoverage = c;
+        coverageFileIndex = cachedCoverageFileIndexes.get(coverageConf.globalCacheKey());
       }
     }
-    analyze(context, fileProvider, usedCoverage, aggregate);
+    analyze(context, fileProvider, coverage, usedCoverage, coverageFileIndex);
   }
 
-  private void analyze(SensorContext context, FileProvider fileProvider, Coverage coverage, boolean aggregate) {
-    if (aggregate) {
-      coverageAggregator.aggregate(wildcardPatternFileProvider, coverage);
+  /**
+   * The import metrics of the module are current during the whole analysis, as a lazy coverage loads its reports while the measures are saved.
+   */
+  private void analyze(SensorContext context, FileProvider fileProvider, Coverage coverage, @Nullable CoverageView reusedCoverage,
+    @Nullable CoverageFileIndex cachedCoverageFileIndex) {
+    ImportMetrics importMetrics = new ImportMetrics("Coverage").start();
+    try {
+      analyze(context, fileProvider, coverage, reusedCoverage, cachedCoverageFileIndex, importMetrics);
+    } finally {
+      importMetrics.stop();
+    }
+  }
+
+  /**
+   * @param coverage the coverage into which the reports are aggregated, unless a reused one is given
+   */
+  private void analyze(SensorContext context, FileProvider fileProvider, Coverage coverage, @Nullable CoverageView reusedCoverage,
+    @Nullable CoverageFileIndex cachedCoverageFileIndex, ImportMetrics importMetrics) {
+    long canonicalizationStart = CanonicalPathCache.nanos();
+
+    CoverageView analyzedCoverage = reusedCoverage == null ? coverage : reusedCoverage;
+    CoverageFileIndex coverageFileIndex = cachedCoverageFileIndex;
+    if (reusedCoverage == null) {
+      boolean lazy = settings.getBoolean(LazyCoverage.PROPERTY_KEY);
+      if (lazy) {
+        analyzedCoverage = coverageAggregator.aggregateLazily(wildcardPatternFileProvider);
+      } else {
+        coverageAggregator.aggregate(wildcardPatternFileProvider, coverage);
+      }
+      coverageFileIndex = new CoverageFileIndex(analyzedCoverage.files());
+      if (settings.getBoolean(coverageConf.globalCacheKey())) {
+        cachedCoverage.put(coverageConf.globalCacheKey(), analyzedCoverage);
+        cachedCoverageFileIndexes.put(coverageConf.globalCacheKey(), coverageFileIndex);
+        if (!lazy) {
+          exportSnapshot(coverage);
+        }
+      }
     }
     CoverageMeasuresBuilder coverageMeasureBuilder = CoverageMeasuresBuilder.create();
+    long measureSaveStart = System.nanoTime();
 
-    for (String filePath : coverage.files()) {
+    Collection<String> moduleFiles = moduleFiles(fileProvider, analyzedCoverage, coverageFileIndex);
+    analyzedCoverage.materialize(moduleFiles);
+    for (String filePath : moduleFiles) {
       org.sonar.api.resources.File sonarFile = fileProvider.fromPath(filePath);
 
       if (sonarFile != null) {
         if (coverageConf.languageKey().equals(sonarFile.getLanguage().getKey())) {
           coverageMeasureBuilder.reset();
-          for (Map.Entry<Integer, Integer> entry : coverage.hits(filePath).entrySet()) {
+          for (Map.Entry<Integer, Integer> entry : analyzedCoverage.hits(filePath).entrySet()) {
             coverageMeasureBuilder.setHits(entry.getKey(), entry.getValue());
           }
+          Map<Integer, Integer> coveredConditions = analyzedCoverage.coveredConditions(filePath);
+          for (Map.Entry<Integer, Integer> entry : analyzedCoverage.conditions(filePath).entrySet()) {
+            coverageMeasureBuilder.setConditions(entry.getKey(), entry.getValue(), coveredConditions.get(entry.getKey()));
+          }
 
           for (Measure measure : coverageMeasureBuilder.createMeasures()) {
             context.saveMeasure(sonarFile, measure);
@@ -111,6 +189,93 @@ public class CoverageReportImportSensor implements Sensor {
         LOG.debug("Code coverage will not be imported for the following file outside of SonarQube: " + filePath);
       }
     }
+
+    importMetrics.setMeasureSaveNanos(System.nanoTime() - measureSaveStart);
+    importMetrics.setCanonicalizationNanos(CanonicalPathCache.nanos() - canonicalizationStart);
+    importMetrics.logSummary();
+    if (settings.hasKey(ImportMetrics.JSON_FILE_PROPERTY_KEY)) {
+      importMetrics.appendJson(new File(settings.getString(ImportMetrics.JSON_FILE_PROPERTY_KEY)), fileProvider.moduleKey());
+    }
+
+    CoverageParserCache.logStatistics();
+    CanonicalPathCache.logStatistics();
+  }
+
+  /**
+   * @return the coverage of the snapshot, provided that it was built from the current versions of the current reports, or null
+   */
+  @Nullable
+  private MappedCoverage attachSnapshot() {
+    File snapshotFile = snapshotFile();
+    if (snapshotFile == null) {
+      return null;
+    }
+
+    List<ReportFingerprint> reports;
+    try {
+      reports = reportFingerprints();
+    } catch (IOException e) {
+      LOG.warn("Not using the coverage snapshot " + snapshotFile.getAbsolutePath() + ", as the reports cannot be fingerprinted", e);
+      return null;
+    }
+
+    MappedCoverage snapshot = CoverageSnapshot.open(snapshotFile, reports);
+    if (snapshot == null) {
+      return null;
+    }
+
+    LOG.info("Attaching to the coverage snapshot " + snapshotFile.getAbsolutePath());
+    return snapshot;
+  }
+
+  private void exportSnapshot(Coverage coverage) {
+    File snapshotFile = snapshotFile();
+    if (snapshotFile == null) {
+      return;
+    }
+
+    try {
+      CoverageSnapshot.write(coverage, reportFingerprints(), snapshotFile);
+      LOG.info("Exported the coverage snapshot " + snapshotFile.getAbsolutePath());
+    } catch (IOException e) {
+      LOG.warn("Cannot export the coverage snapshot " + snapshotFile.getAbsolutePath(), e);
+    }
+  }
+
+  @Nullable
+  private File snapshotFile() {
+    String key = coverageConf.globalCacheKey() + SNAPSHOT_PROPERTY_SUFFIX;
+    return settings.hasKey(key) ? new File(settings.getString(key)) : null;
+  }
+
+  private List<ReportFingerprint> reportFingerprints() throws IOException {
+    List<ReportFingerprint> fingerprints = Lists.newArrayList();
+    for (File report : coverageAggregator.reportFiles(wildcardPatternFileProvider)) {
+      fingerprints.add(ReportFingerprint.of(report, false));
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Only the files located under the module base directory can be resolved, so the other ones are not even looked up.
+   */
+  private static Collection<String> moduleFiles(FileProvider fileProvider, CoverageView coverage, @Nullable CoverageFileIndex coverageFileIndex) {
+    File baseDir = fileProvider.baseDir();
+    if (baseDir == null || coverageFileIndex == null) {
+      return coverage.files();
+    }
+
+    String canonicalBaseDir;
+    try {
+      canonicalBaseDir = CanonicalPathCache.canonicalPath(baseDir.getAbsolutePath());
+    } catch (IOException e) {
+      LOG.debug("Looking up all the covered files, as the module base directory cannot be canonicalized: " + baseDir.getAbsolutePath(), e);
+      return coverage.files();
+    }
+
+    Collection<String> files = coverageFileIndex.filesUnder(canonicalBaseDir);
+    LOG.debug(files.size() + " of the " + coverageFileIndex.size() + " covered files are located under the module base directory " + canonicalBaseDir);
+    return files;
   }
 
 }
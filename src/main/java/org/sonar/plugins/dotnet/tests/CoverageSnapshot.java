@@ -0,0 +1,165 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Exports and imports a compact binary snapshot of a {@link Coverage}, so that later analyses can attach to it without parsing the reports again.
+ * The snapshot starts with the fingerprints of the reports it was built from and the table of the covered file paths,
+ * followed by the delta encoded lines and hits of each file, which are memory-mapped and only decoded when looked up.
+ */
+public final class CoverageSnapshot {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CoverageSnapshot.class);
+
+  private static final int MAGIC = 0x444E4353;
+  private static final int VERSION = 1;
+
+  private CoverageSnapshot() {
+  }
+
+  public static void write(final Coverage coverage, final List<ReportFingerprint> reports, File file) throws IOException {
+    final List<String> files = ImmutableList.copyOf(coverage.files());
+    final int[] offsets = new int[files.size()];
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    DataOutputStream dataOut = new DataOutputStream(data);
+    for (int i = 0; i < offsets.length; i++) {
+      offsets[i] = dataOut.size();
+      CoverageCodec.writeFile(coverage, files.get(i), dataOut);
+    }
+    dataOut.flush();
+
+    BinaryFiles.write(file, MAGIC, VERSION, new BinaryFiles.Content() {
+      @Override
+      public void write(DataOutputStream out) throws IOException {
+        out.writeInt(coverage.cellCount());
+        CoverageCodec.writeVarInt(out, reports.size());
+        for (ReportFingerprint report : reports) {
+          report.write(out);
+        }
+        CoverageCodec.writeVarInt(out, offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+          out.writeUTF(files.get(i));
+          CoverageCodec.writeVarInt(out, offsets[i]);
+        }
+        data.writeTo(out);
+      }
+    });
+  }
+
+  /**
+   * The fingerprints of the snapshot are compared with the current ones before the file is mapped,
+   * so that an outdated snapshot is never mapped and remains replaceable.
+   *
+   * @return the coverage of the snapshot, or null if it does not exist, cannot be read or was built from other reports
+   */
+  @Nullable
+  public static MappedCoverage open(File file, List<ReportFingerprint> currentReports) {
+    if (!file.isFile()) {
+      return null;
+    }
+
+    List<ReportFingerprint> reports;
+    String[] paths;
+    int[] offsets;
+    int cellCount;
+    long dataStart;
+    CountingInputStream counter = null;
+    try {
+      counter = new CountingInputStream(BinaryFiles.open(file));
+      DataInputStream in = new DataInputStream(counter);
+      if (!BinaryFiles.readHeader(in, MAGIC, VERSION)) {
+        LOG.info("Ignoring the coverage snapshot in an unknown format: " + file.getAbsolutePath());
+        return null;
+      }
+      cellCount = in.readInt();
+
+      int reportCount = CoverageCodec.readVarInt(in);
+      reports = Lists.newArrayListWithCapacity(reportCount);
+      for (int i = 0; i < reportCount; i++) {
+        reports.add(ReportFingerprint.read(in));
+      }
+      if (!reports.equals(currentReports)) {
+        LOG.info("Not using the outdated coverage snapshot " + file.getAbsolutePath());
+        return null;
+      }
+
+      int fileCount = CoverageCodec.readVarInt(in);
+      paths = new String[fileCount];
+      offsets = new int[fileCount];
+      for (int i = 0; i < fileCount; i++) {
+        paths[i] = CanonicalPathCache.intern(in.readUTF());
+        offsets[i] = CoverageCodec.readVarInt(in);
+      }
+      dataStart = counter.getCount();
+    } catch (IOException e) {
+      LOG.warn("Ignoring the unreadable coverage snapshot " + file.getAbsolutePath(), e);
+      return null;
+    } finally {
+      Closeables.closeQuietly(counter);
+    }
+
+    try {
+      MappedByteBuffer data = map(file, dataStart);
+      for (int offset : offsets) {
+        if (offset < 0 || offset >= data.capacity()) {
+          throw new IOException("Invalid offset " + offset + " of the coverage of a file");
+        }
+      }
+      return new MappedCoverage(reports, paths, offsets, cellCount, data);
+    } catch (IOException e) {
+      LOG.warn("Ignoring the unreadable coverage snapshot " + file.getAbsolutePath(), e);
+      return null;
+    }
+  }
+
+  private static MappedByteBuffer map(File file, long start) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      long size = channel.size() - start;
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Coverage snapshots larger than 2 GB are not supported");
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read access to the hits and conditions of the covered files, as consumed by the sensor:
+ * implemented by the {@link Coverage} being aggregated, and by the read-only {@link MappedCoverage} and {@link LazyCoverage}.
+ */
+public interface CoverageView {
+
+  Set<String> files();
+
+  /**
+   * @return the number of lines with hits plus the number of lines with conditions
+   */
+  int cellCount();
+
+  /**
+   * Makes sure that the hits of the given files are available, which they always are unless the coverage is lazy.
+   */
+  void materialize(Collection<String> files);
+
+  Map<Integer, Integer> hits(String file);
+
+  Map<Integer, Integer> conditions(String file);
+
+  Map<Integer, Integer> coveredConditions(String file);
+
+  /**
+   * Returns the covered conditions mask of each line having conditions, the n-th bit tracking the n-th condition.
+   */
+  Map<Integer, Long> coveredConditionsMasks(String file);
+
+}
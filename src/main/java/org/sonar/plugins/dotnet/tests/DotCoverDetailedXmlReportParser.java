@@ -0,0 +1,111 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+public class DotCoverDetailedXmlReportParser implements CoverageParser {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DotCoverDetailedXmlReportParser.class);
+
+  @Override
+  public void parse(File file, Coverage coverage) {
+    LOG.info("Parsing the dotCover DetailedXML report " + file.getAbsolutePath());
+    new Parser(file, coverage).parse();
+  }
+
+  private static class Parser {
+
+    private final File file;
+    private XmlParserHelper xmlParserHelper;
+    private final Map<String, String> files = Maps.newHashMap();
+    private final Coverage coverage;
+    private final XmlParserHelper.Attribute statementFileIndex = new XmlParserHelper.Attribute("FileIndex");
+    private final XmlParserHelper.Attribute statementLine = new XmlParserHelper.Attribute("Line");
+    private final XmlParserHelper.Attribute statementCovered = new XmlParserHelper.Attribute("Covered");
+
+    public Parser(File file, Coverage coverage) {
+      this.file = file;
+      this.coverage = coverage;
+    }
+
+    public void parse() {
+      try {
+        xmlParserHelper = new XmlParserHelper(file);
+        xmlParserHelper.checkRootTag("Root");
+        dispatchTags();
+      } finally {
+        if (xmlParserHelper != null) {
+          xmlParserHelper.close();
+        }
+      }
+    }
+
+    private void dispatchTags() {
+      String tagName;
+      while ((tagName = xmlParserHelper.nextTag()) != null) {
+        if ("File".equals(tagName)) {
+          handleFileTag();
+        } else if ("Statement".equals(tagName)) {
+          handleStatementTag();
+        }
+      }
+    }
+
+    private void handleFileTag() {
+      String index = xmlParserHelper.getRequiredAttribute("Index");
+      String name = xmlParserHelper.getRequiredAttribute("Name");
+
+      try {
+        files.put(index, CanonicalPathCache.canonicalPath(name));
+      } catch (IOException e) {
+        LOG.debug("Skipping the import of dotCover code coverage for the invalid file path: " + name
+          + " at line " + xmlParserHelper.stream().getLocation().getLineNumber(), e);
+      }
+    }
+
+    private void handleStatementTag() {
+      String fileIndex = xmlParserHelper.getRequiredAttribute(statementFileIndex);
+      int line = xmlParserHelper.getRequiredIntAttribute(statementLine);
+      String covered = xmlParserHelper.getRequiredAttribute(statementCovered);
+
+      int hits;
+      if ("True".equalsIgnoreCase(covered)) {
+        hits = 1;
+      } else if ("False".equalsIgnoreCase(covered)) {
+        hits = 0;
+      } else {
+        throw xmlParserHelper.parseError("Unsupported \"Covered\" value \"" + covered + "\", expected one of \"True\" or \"False\"");
+      }
+
+      if (files.containsKey(fileIndex)) {
+        coverage.addHits(files.get(fileIndex), line, hits);
+      }
+    }
+
+  }
+
+}
@@ -22,16 +22,18 @@ package org.sonar.plugins.dotnet.tests;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
-import com.google.common.io.Files;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStreamReader;
+import java.util.Arrays;
 
 public class DotCoverReportParser implements CoverageParser {
 
@@ -43,67 +45,245 @@ public class DotCoverReportParser implements CoverageParser {
     new Parser(file, coverage).parse();
   }
 
+  /**
+   * Single pass scanner over the HTML report, equivalent to the following regular expressions applied to the whole contents:
+   * the first {@link #TITLE_PATTERN} and the last {@link #COVERED_LINES_PATTERN_1} block, whose tuples match {@link #COVERED_LINES_PATTERN_2}.
+   */
   private static class Parser {
 
-    private static final Pattern TITLE_PATTERN = Pattern.compile(".*?<title>(.*?)</title>.*", Pattern.DOTALL);
-    private static final Pattern COVERED_LINES_PATTERN_1 = Pattern.compile(
-      ".*<script type=\"text/javascript\">\\s*+highlightRanges\\(\\[(.*?)\\]\\);\\s*+</script>.*",
-      Pattern.DOTALL);
-    private static final Pattern COVERED_LINES_PATTERN_2 = Pattern.compile("\\[(\\d++),\\d++,\\d++,\\d++,(\\d++)\\]");
+    private static final String TITLE_PATTERN = ".*?<title>(.*?)</title>.*";
+    private static final String COVERED_LINES_PATTERN_1 = ".*<script type=\"text/javascript\">\\s*+highlightRanges\\(\\[(.*?)\\]\\);\\s*+</script>.*";
+    private static final String COVERED_LINES_PATTERN_2 = "\\[(\\d++),\\d++,\\d++,\\d++,(\\d++)\\]";
+
+    private static final String TITLE_START = "<title>";
+    private static final String TITLE_END = "</title>";
+    private static final String SCRIPT_START = "<script type=\"text/javascript\">";
+    private static final String HIGHLIGHT_START = "highlightRanges([";
+    private static final String SCRIPT_END = "</script>";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TUPLE_SIZE = 5;
 
     private final File file;
     private final Coverage coverage;
 
+    private BufferedReader reader;
+
+    private String title;
+
+    private int[] blockHits = new int[64];
+    private int blockHitsSize;
+    private int[] hits;
+    private int hitsSize;
+
+    private final int[] tuple = new int[TUPLE_SIZE];
+    private int tupleIndex = -1;
+    private boolean tupleHasDigit;
+
     public Parser(File file, Coverage coverage) {
       this.file = file;
       this.coverage = coverage;
     }
 
     public void parse() {
-      String contents;
+      CountingInputStream in = null;
       try {
-        contents = Files.toString(file, Charsets.UTF_8);
+        in = new CountingInputStream(ReportStreams.open(file));
+        reader = new BufferedReader(new InputStreamReader(in, Charsets.UTF_8), BUFFER_SIZE);
+        scan();
       } catch (IOException e) {
         throw Throwables.propagate(e);
+      } finally {
+        Closeables.closeQuietly(reader);
+        Closeables.closeQuietly(in);
       }
+      ImportMetrics.addRead(in.getCount(), hitsSize / 2);
 
-      String fileCanonicalPath = extractFileCanonicalPath(contents);
+      checkMatches(title != null, TITLE_PATTERN);
+      String fileCanonicalPath = canonicalPath(title);
       if (fileCanonicalPath != null) {
-        collectCoverage(fileCanonicalPath, contents);
+        checkMatches(hits != null, COVERED_LINES_PATTERN_1);
+        for (int i = 0; i < hitsSize; i += 2) {
+          coverage.addHits(fileCanonicalPath, hits[i], hits[i + 1]);
+        }
       }
     }
 
-    @Nullable
-    private static String extractFileCanonicalPath(String contents) {
-      Matcher matcher = TITLE_PATTERN.matcher(contents);
-      checkMatches(matcher);
+    private void scan() throws IOException {
+      int c;
+      while ((c = reader.read()) != -1) {
+        if (c == '<') {
+          if (title == null && consume(TITLE_START, 1)) {
+            title = readUntil(TITLE_END);
+          } else if (consume(SCRIPT_START, 1)) {
+            scanScript();
+          }
+        }
+      }
+    }
 
-      String lowerCaseAbsolutePath = matcher.group(1);
+    /**
+     * Called right after a script start tag: collects the highlighted ranges if the script is a complete highlightRanges() call.
+     */
+    private void scanScript() throws IOException {
+      if (!consumeHighlightStart()) {
+        return;
+      }
+      startBlock();
 
-      try {
-        return new File(lowerCaseAbsolutePath).getCanonicalPath();
-      } catch (IOException e) {
-        LOG.debug("Skipping the import of dotCover code coverage for the invalid file path: " + lowerCaseAbsolutePath, e);
-        return null;
+      int c;
+      while ((c = reader.read()) != -1) {
+        if (c == ']' && consumeBlockEnd()) {
+          hits = blockHits;
+          hitsSize = blockHitsSize;
+          blockHits = new int[64];
+          return;
+        } else if (c == '<' && consume(SCRIPT_START, 1)) {
+          // A later highlightRanges() call supersedes this one, as the regular expression would select the last one
+          if (consumeHighlightStart()) {
+            startBlock();
+          } else {
+            tupleIndex = -1;
+          }
+        } else {
+          feedTuple(c);
+        }
       }
     }
 
-    private void collectCoverage(String fileCanonicalPath, String contents) {
-      Matcher matcher = COVERED_LINES_PATTERN_1.matcher(contents);
-      checkMatches(matcher);
-      String highlightedContents = matcher.group(1);
+    private boolean consumeHighlightStart() throws IOException {
+      skipWhitespaces();
+      return consume(HIGHLIGHT_START, 0);
+    }
+
+    private void startBlock() {
+      blockHitsSize = 0;
+      tupleIndex = -1;
+    }
 
-      matcher = COVERED_LINES_PATTERN_2.matcher(highlightedContents);
+    private boolean consumeBlockEnd() throws IOException {
+      reader.mark(BUFFER_SIZE);
+      if (reader.read() == ')' && reader.read() == ';') {
+        int c;
+        do {
+          c = reader.read();
+        } while (c != -1 && isWhitespace(c));
+
+        if (c == '<' && matches(SCRIPT_END, 1)) {
+          return true;
+        }
+      }
+      reader.reset();
+      return false;
+    }
+
+    /**
+     * Incremental equivalent of finding {@link #COVERED_LINES_PATTERN_2} within the highlighted ranges.
+     */
+    private void feedTuple(int c) {
+      if (c == '[') {
+        startTuple();
+      } else if (tupleIndex >= 0) {
+        if (c >= '0' && c <= '9') {
+          appendDigit(c - '0');
+        } else if (c == ',' && tupleHasDigit && tupleIndex < TUPLE_SIZE - 1) {
+          tupleIndex++;
+          tuple[tupleIndex] = 0;
+          tupleHasDigit = false;
+        } else if (c == ']' && tupleHasDigit && tupleIndex == TUPLE_SIZE - 1) {
+          addBlockHits(tuple[0], tuple[TUPLE_SIZE - 1]);
+          tupleIndex = -1;
+        } else {
+          tupleIndex = -1;
+        }
+      }
+    }
+
+    private void appendDigit(int digit) {
+      int value = tuple[tupleIndex];
+      if (value > (Integer.MAX_VALUE - digit) / 10) {
+        throw new NumberFormatException("Integer overflow in the highlighted ranges of " + file.getAbsolutePath());
+      }
+      tuple[tupleIndex] = value * 10 + digit;
+      tupleHasDigit = true;
+    }
 
-      while (matcher.find()) {
-        int line = Integer.parseInt(matcher.group(1));
-        int hits = Integer.parseInt(matcher.group(2));
-        coverage.addHits(fileCanonicalPath, line, hits);
+    private void startTuple() {
+      tupleIndex = 0;
+      tuple[0] = 0;
+      tupleHasDigit = false;
+    }
+
+    private void addBlockHits(int line, int lineHits) {
+      if (blockHitsSize + 2 > blockHits.length) {
+        blockHits = Arrays.copyOf(blockHits, blockHits.length * 2);
+      }
+      blockHits[blockHitsSize++] = line;
+      blockHits[blockHitsSize++] = lineHits;
+    }
+
+    /**
+     * Consumes the given literal if the next characters match it, starting from its given offset.
+     * The reader is left untouched otherwise.
+     */
+    private boolean consume(String literal, int offset) throws IOException {
+      reader.mark(literal.length());
+      if (matches(literal, offset)) {
+        return true;
+      }
+      reader.reset();
+      return false;
+    }
+
+    private boolean matches(String literal, int offset) throws IOException {
+      for (int i = offset; i < literal.length(); i++) {
+        if (reader.read() != literal.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void skipWhitespaces() throws IOException {
+      while (true) {
+        reader.mark(1);
+        int c = reader.read();
+        if (c == -1 || !isWhitespace(c)) {
+          reader.reset();
+          return;
+        }
+      }
+    }
+
+    private static boolean isWhitespace(int c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    @Nullable
+    private String readUntil(String end) throws IOException {
+      StringBuilder sb = new StringBuilder();
+      int c;
+      while ((c = reader.read()) != -1) {
+        if (c == end.charAt(0) && consume(end, 1)) {
+          return sb.toString();
+        }
+        sb.append((char) c);
+      }
+      return null;
+    }
+
+    @Nullable
+    private static String canonicalPath(String lowerCaseAbsolutePath) {
+      try {
+        return CanonicalPathCache.canonicalPath(lowerCaseAbsolutePath);
+      } catch (IOException e) {
+        LOG.debug("Skipping the import of dotCover code coverage for the invalid file path: " + lowerCaseAbsolutePath, e);
+        return null;
       }
     }
 
-    private static void checkMatches(Matcher matcher) {
-      Preconditions.checkArgument(matcher.matches(), "The report contents does not match the following regular expression: " + matcher.pattern().pattern());
+    private static void checkMatches(boolean matches, String pattern) {
+      Preconditions.checkArgument(matches, "The report contents does not match the following regular expression: " + pattern);
     }
 
   }
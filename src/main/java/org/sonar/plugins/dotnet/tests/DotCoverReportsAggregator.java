@@ -19,51 +19,103 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Throwables;
-import com.google.common.io.Files;
+import com.google.common.collect.Lists;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class DotCoverReportsAggregator implements CoverageParser {
 
   private static final Logger LOG = LoggerFactory.getLogger(DotCoverReportsAggregator.class);
 
+  private static final Pattern XML_ROOT_PATTERN = Pattern.compile("<Root(?=[\\s/>])[^>]*+>");
+  private static final Pattern DETAILED_XML_REPORT_TYPE_PATTERN = Pattern.compile("ReportType\\s*+=\\s*+[\"']DetailedXml[\"']", Pattern.CASE_INSENSITIVE);
+
   private final DotCoverReportParser parser;
+  private final DotCoverDetailedXmlReportParser detailedXmlParser;
+  private final int threads;
 
   public DotCoverReportsAggregator(DotCoverReportParser parser) {
+    this(parser, new DotCoverDetailedXmlReportParser());
+  }
+
+  public DotCoverReportsAggregator(DotCoverReportParser parser, DotCoverDetailedXmlReportParser detailedXmlParser) {
+    this(parser, detailedXmlParser, 1);
+  }
+
+  public DotCoverReportsAggregator(DotCoverReportParser parser, DotCoverDetailedXmlReportParser detailedXmlParser, int threads) {
     this.parser = parser;
+    this.detailedXmlParser = detailedXmlParser;
+    this.threads = threads;
   }
 
   @Override
   public void parse(File file, Coverage coverage) {
+    ReportHeader header = ReportHeader.read(file);
+    if (header.startsWith("<!DOCTYPE html>")) {
+      parseHtml(file, coverage);
+    } else if (isXml(header)) {
+      checkIsDetailedXml(header);
+      detailedXmlParser.parse(file, coverage);
+    } else {
+      throw new IllegalArgumentException("Only dotCover HTML reports which start with \"<!DOCTYPE html>\" and dotCover DetailedXML reports are supported.");
+    }
+  }
+
+  private void parseHtml(File file, Coverage coverage) {
+    Preconditions.checkArgument(ReportStreams.archive(file) == null,
+      "dotCover HTML reports cannot be read from a zip archive, as their sources folder must be on disk: " + file.getAbsolutePath());
     LOG.info("Aggregating the HTML reports from " + file.getAbsolutePath());
-    checkIsHtml(file);
 
     String folderName = extractFolderName(file);
     File folder = new File(file.getParentFile(), folderName + "/src");
     Preconditions.checkArgument(folder.exists(), "The following report dotCover report HTML sources folder cannot be found: " + folder.getAbsolutePath());
 
+    List<ParallelCoverageParsing.Task> pages = Lists.newArrayList();
     for (File reportFile : FileUtils.listFiles(folder, new String[] {"html"}, false)) {
       if (!isExcluded(reportFile)) {
-        parser.parse(reportFile, coverage);
+        pages.add(new ParallelCoverageParsing.Task(parser, reportFile));
       }
     }
-  }
 
-  private static void checkIsHtml(File file) {
-    String contents;
-    try {
-      contents = Files.toString(file, Charsets.UTF_8);
-    } catch (IOException e) {
-      throw Throwables.propagate(e);
+    int pageThreads = ParallelCoverageParsing.isWorkerThread() ? 1 : Math.max(1, Math.min(threads, pages.size()));
+    long bytesBefore = ImportMetrics.bytesRead();
+    long start = System.nanoTime();
+    if (pageThreads > 1) {
+      ParallelCoverageParsing.parse(pages, coverage, pageThreads, "dotcover-parser");
+    } else {
+      for (ParallelCoverageParsing.Task page : pages) {
+        page.parse(coverage);
+      }
     }
-    Preconditions.checkArgument(contents.startsWith("<!DOCTYPE html>"), "Only dotCover HTML reports which start with \"<!DOCTYPE html>\" are supported.");
+    long nanos = System.nanoTime() - start;
+    logThroughput(pages.size(), bytesBefore == -1 ? -1 : ImportMetrics.bytesRead() - bytesBefore, pageThreads, nanos);
+  }
+
+  private static void logThroughput(int pages, long bytes, int threads, long nanos) {
+    long millis = nanos / 1000000;
+    double seconds = Math.max(nanos, 1) / 1e9;
+    String read = bytes == -1 ? "" : String.format(Locale.ENGLISH, " (%d bytes)", bytes);
+    LOG.info(String.format(Locale.ENGLISH, "Parsed %d dotCover HTML pages%s in %d ms using %d threads: %.1f pages/s",
+      pages, read, millis, threads, pages / seconds));
+  }
+
+  private static boolean isXml(ReportHeader header) {
+    return header.startsWith("<?xml") || XML_ROOT_PATTERN.matcher(header.text()).lookingAt();
+  }
+
+  private static void checkIsDetailedXml(ReportHeader header) {
+    Matcher matcher = XML_ROOT_PATTERN.matcher(header.text());
+    boolean detailedXml = matcher.find() &&
+      (DETAILED_XML_REPORT_TYPE_PATTERN.matcher(matcher.group()).find() || header.text().contains("<FileIndices>"));
+    Preconditions.checkArgument(detailedXml, "Only the DetailedXML dotCover XML reports, which contain line information, are supported.");
   }
 
   private static String extractFolderName(File file) {
@@ -22,6 +22,8 @@ package org.sonar.plugins.dotnet.tests;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.resources.Project;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
 
 /**
@@ -31,10 +33,25 @@ public class FileProvider {
 
   private final Project project;
   private final SensorContext context;
+  private final File baseDir;
 
   public FileProvider(Project project, SensorContext context) {
+    this(project, context, null);
+  }
+
+  public FileProvider(Project project, SensorContext context, @Nullable File baseDir) {
     this.project = project;
     this.context = context;
+    this.baseDir = baseDir;
+  }
+
+  public String moduleKey() {
+    return project.getKey();
+  }
+
+  @Nullable
+  public File baseDir() {
+    return baseDir;
   }
 
   public org.sonar.api.resources.File fromPath(String path) {
@@ -0,0 +1,308 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing and throughput of one execution of an import sensor: per report wall time, bytes read, XML elements visited,
+ * coverage cells or tests added, plus the canonicalization and measure saving time of the sensor.
+ * Readers report the bytes and elements through {@link #addRead(long, long)}, which is attributed to the report being parsed
+ * by the current thread, or by the thread which started the worker threads of that report.
+ * A sensor makes its metrics current between {@link #start()} and {@link #stop()}, so that the aggregators record into them
+ * without any additional argument.
+ */
+public class ImportMetrics {
+
+  public static final String JSON_FILE_PROPERTY_KEY = "sonar.dotnet.importMetrics.jsonFile";
+
+  private static final Logger LOG = LoggerFactory.getLogger(ImportMetrics.class);
+  private static final InheritableThreadLocal<Report> currentReport = new InheritableThreadLocal<Report>();
+  private static final ThreadLocal<ImportMetrics> current = new ThreadLocal<ImportMetrics>();
+
+  private final String sensor;
+  private final List<Report> reports = Collections.synchronizedList(Lists.<Report>newArrayList());
+  private final long startNanos = System.nanoTime();
+  private long canonicalizationNanos;
+  private long measureSaveNanos;
+
+  public ImportMetrics(String sensor) {
+    this.sensor = sensor;
+  }
+
+  /**
+   * Returns the metrics started by the sensor running on the current thread, or new detached metrics outside of a sensor.
+   */
+  public static ImportMetrics current(String sensor) {
+    ImportMetrics importMetrics = current.get();
+    return importMetrics == null ? new ImportMetrics(sensor) : importMetrics;
+  }
+
+  public ImportMetrics start() {
+    current.set(this);
+    return this;
+  }
+
+  public void stop() {
+    current.remove();
+  }
+
+  public static void addRead(long bytes, long elements) {
+    Report report = currentReport.get();
+    if (report != null) {
+      report.bytes.addAndGet(bytes);
+      report.elements.addAndGet(elements);
+    }
+  }
+
+  /**
+   * @return the bytes read so far for the report being parsed by the current thread, or -1 if no report is being measured
+   */
+  public static long bytesRead() {
+    Report report = currentReport.get();
+    return report == null ? -1 : report.bytes.get();
+  }
+
+  public Report startReport(String parser, File file) {
+    Report report = new Report(parser, file.getAbsolutePath(), currentReport.get());
+    currentReport.set(report);
+    reports.add(report);
+    return report;
+  }
+
+  public CoverageParser instrument(final String parser, final CoverageParser wrappedParser) {
+    return new CoverageParser() {
+      @Override
+      public void parse(File file, Coverage coverage) {
+        long cells = coverage.cellCount();
+        Report report = startReport(parser, file);
+        try {
+          wrappedParser.parse(file, coverage);
+        } finally {
+          report.stop(coverage.cellCount() - cells, 0);
+        }
+      }
+    };
+  }
+
+  /**
+   * Instruments a parser with the metrics which are current at each of its parsings, rather than with given ones,
+   * for the parsers which are still used by the executions of the sensor on the next modules.
+   */
+  public static CoverageParser instrumentCurrent(final String sensor, final String parser, final CoverageParser wrappedParser) {
+    return new CoverageParser() {
+      @Override
+      public void parse(File file, Coverage coverage) {
+        current(sensor).instrument(parser, wrappedParser).parse(file, coverage);
+      }
+    };
+  }
+
+  public void setCanonicalizationNanos(long canonicalizationNanos) {
+    this.canonicalizationNanos = canonicalizationNanos;
+  }
+
+  public void setMeasureSaveNanos(long measureSaveNanos) {
+    this.measureSaveNanos = measureSaveNanos;
+  }
+
+  public List<Report> reports() {
+    synchronized (reports) {
+      return ImmutableList.copyOf(reports);
+    }
+  }
+
+  public void logSummary() {
+    List<Report> allReports = reports();
+    for (Report report : allReports) {
+      LOG.debug(report.parser + " " + report.path + ": " + millis(report.nanos) + " ms, " + report.bytes + " bytes, "
+        + report.elements + " elements, " + report.cells + " cells, " + report.tests + " tests");
+    }
+
+    Map<String, Report> totalsByParser = Maps.newTreeMap();
+    for (Report report : allReports) {
+      Report total = totalsByParser.get(report.parser);
+      if (total == null) {
+        total = new Report(report.parser, null, null);
+        totalsByParser.put(report.parser, total);
+      }
+      total.add(report);
+    }
+    for (Report total : totalsByParser.values()) {
+      LOG.info(sensor + " import, " + total.parser + ": " + total.count + " reports in " + millis(total.nanos) + " ms, "
+        + total.bytes + " bytes (" + String.format(Locale.ENGLISH, "%.1f", total.bytes.get() / 1e6 / Math.max(total.nanos, 1) * 1e9) + " MB/s), "
+        + total.elements + " elements, " + total.cells + " cells, " + total.tests + " tests");
+    }
+    LOG.info(sensor + " import: " + allReports.size() + " reports, " + millis(canonicalizationNanos) + " ms canonicalizing paths, "
+      + millis(measureSaveNanos) + " ms saving measures, " + millis(System.nanoTime() - startNanos) + " ms in total");
+  }
+
+  /**
+   * Appends this execution as one JSON object on its own line, so that the file accumulates all the executions of an analysis.
+   */
+  public void appendJson(File file, @Nullable String module) {
+    Writer writer = null;
+    try {
+      Files.createParentDirs(file);
+      writer = new OutputStreamWriter(new FileOutputStream(file, true), Charsets.UTF_8);
+      writer.write(toJson(module));
+      writer.write('\n');
+    } catch (IOException e) {
+      LOG.warn("Unable to write the import metrics to " + file.getAbsolutePath(), e);
+    } finally {
+      Closeables.closeQuietly(writer);
+    }
+  }
+
+  @VisibleForTesting
+  String toJson(@Nullable String module) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"sensor\":").append(quote(sensor))
+      .append(",\"module\":").append(module == null ? "null" : quote(module))
+      .append(",\"wallTimeMs\":").append(millis(System.nanoTime() - startNanos))
+      .append(",\"canonicalizationTimeMs\":").append(millis(canonicalizationNanos))
+      .append(",\"measureSaveTimeMs\":").append(millis(measureSaveNanos))
+      .append(",\"reports\":[");
+    boolean first = true;
+    for (Report report : reports()) {
+      if (!first) {
+        sb.append(',');
+      }
+      first = false;
+      sb.append("{\"parser\":").append(quote(report.parser))
+        .append(",\"path\":").append(quote(report.path))
+        .append(",\"wallTimeMs\":").append(millis(report.nanos))
+        .append(",\"bytes\":").append(report.bytes)
+        .append(",\"elements\":").append(report.elements)
+        .append(",\"cells\":").append(report.cells)
+        .append(",\"tests\":").append(report.tests)
+        .append('}');
+    }
+    return sb.append("]}").toString();
+  }
+
+  private static String quote(String value) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format(Locale.ENGLISH, "\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  private static long millis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  public static class Report {
+
+    private final String parser;
+    private final String path;
+    private final Report previousReport;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong elements = new AtomicLong();
+    private long nanos;
+    private long cells;
+    private long tests;
+    private int count;
+
+    private Report(String parser, @Nullable String path, @Nullable Report previousReport) {
+      this.parser = parser;
+      this.path = path;
+      this.previousReport = previousReport;
+    }
+
+    public void stop(long cellsAdded, long testsAdded) {
+      nanos = System.nanoTime() - startNanos;
+      cells = cellsAdded;
+      tests = testsAdded;
+      count = 1;
+      if (previousReport == null) {
+        currentReport.remove();
+      } else {
+        currentReport.set(previousReport);
+      }
+    }
+
+    private void add(Report report) {
+      nanos += report.nanos;
+      bytes.addAndGet(report.bytes.get());
+      elements.addAndGet(report.elements.get());
+      cells += report.cells;
+      tests += report.tests;
+      count += report.count;
+    }
+
+    public String parser() {
+      return parser;
+    }
+
+    public String path() {
+      return path;
+    }
+
+    public long bytes() {
+      return bytes.get();
+    }
+
+    public long elements() {
+      return elements.get();
+    }
+
+    public long cells() {
+      return cells;
+    }
+
+    public long tests() {
+      return tests;
+    }
+
+  }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coverage whose hits are only decoded on demand: the reports are first parsed to index the files covered by each of them,
+ * then the reports covering the files whose hits are needed are loaded again, keeping only the hits of those files.
+ * This trades loading time for heap, which then only holds the hits of the files of one module at a time.
+ * The reports do not tell where the hits of a file start, so a report covering one of the files is parsed again as a whole.
+ */
+public class LazyCoverage implements CoverageView {
+
+  public static final String PROPERTY_KEY = "sonar.dotnet.coverage.lazy";
+
+  private static final Logger LOG = LoggerFactory.getLogger(LazyCoverage.class);
+
+  private final List<ParallelCoverageParsing.Task> reports;
+  private List<Set<String>> filesByReport;
+  private Set<String> files;
+  private Coverage materialized = new Coverage();
+
+  public LazyCoverage(List<ParallelCoverageParsing.Task> reports) {
+    this.reports = ImmutableList.copyOf(reports);
+  }
+
+  /**
+   * Parses the reports once, only to index the files covered by each of them.
+   */
+  public LazyCoverage index() {
+    ImmutableList.Builder<Set<String>> indexes = ImmutableList.builder();
+    Set<String> allFiles = Sets.newHashSet();
+    for (ParallelCoverageParsing.Task report : reports) {
+      FileIndexingCoverage index = new FileIndexingCoverage();
+      report.parse(index);
+      indexes.add(ImmutableSet.copyOf(index.files));
+      allFiles.addAll(index.files);
+    }
+    filesByReport = indexes.build();
+    files = ImmutableSet.copyOf(allFiles);
+    return this;
+  }
+
+  @Override
+  public synchronized void materialize(Collection<String> requestedFiles) {
+    Set<String> accepted = Sets.newHashSet(requestedFiles);
+    accepted.retainAll(files());
+    if (materialized.files().containsAll(accepted)) {
+      return;
+    }
+
+    List<ParallelCoverageParsing.Task> coveringReports = Lists.newArrayList();
+    for (int i = 0; i < reports.size(); i++) {
+      if (!Collections.disjoint(filesByReport.get(i), accepted)) {
+        coveringReports.add(reports.get(i));
+      }
+    }
+    LOG.debug("Loading again " + coveringReports.size() + " of the " + reports.size() + " coverage reports for the hits of " + accepted.size() + " files");
+
+    // The previously materialized hits are released before parsing again
+    materialized = new Coverage();
+    FilteringCoverage coverage = new FilteringCoverage(accepted);
+    for (ParallelCoverageParsing.Task report : coveringReports) {
+      report.parse(coverage);
+    }
+    materialized = coverage;
+  }
+
+  @Override
+  public Set<String> files() {
+    if (files == null) {
+      throw new IllegalStateException("The reports have not been indexed yet");
+    }
+    return files;
+  }
+
+  /**
+   * @return the number of cells of the currently materialized files
+   */
+  @Override
+  public int cellCount() {
+    return materialized.cellCount();
+  }
+
+  @Override
+  public Map<Integer, Integer> hits(String file) {
+    return materialized(file).hits(file);
+  }
+
+  @Override
+  public Map<Integer, Integer> conditions(String file) {
+    return materialized(file).conditions(file);
+  }
+
+  @Override
+  public Map<Integer, Integer> coveredConditions(String file) {
+    return materialized(file).coveredConditions(file);
+  }
+
+  @Override
+  public Map<Integer, Long> coveredConditionsMasks(String file) {
+    return materialized(file).coveredConditionsMasks(file);
+  }
+
+  private synchronized Coverage materialized(String file) {
+    if (!materialized.files().contains(file) && files().contains(file)) {
+      materialize(Collections.singleton(file));
+    }
+    return materialized;
+  }
+
+  /**
+   * Only records the covered files.
+   */
+  private static class FileIndexingCoverage extends Coverage {
+
+    private final Set<String> files = Sets.newHashSet();
+
+    @Override
+    public void addHits(String file, int line, int hits) {
+      files.add(file);
+    }
+
+    @Override
+    public void appendCondition(String file, int line, boolean covered) {
+      files.add(file);
+    }
+
+    @Override
+    public void addConditions(String file, int line, int conditions, long coveredConditionsMask) {
+      files.add(file);
+    }
+
+    @Override
+    void addAll(String file, LineHits lineHits) {
+      files.add(file);
+    }
+
+    @Override
+    public Set<String> files() {
+      return Collections.unmodifiableSet(files);
+    }
+
+  }
+
+  /**
+   * Only keeps the hits of the accepted files.
+   */
+  private static class FilteringCoverage extends Coverage {
+
+    private final Set<String> accepted;
+
+    public FilteringCoverage(Set<String> accepted) {
+      this.accepted = accepted;
+    }
+
+    @Override
+    public void addHits(String file, int line, int hits) {
+      if (accepted.contains(file)) {
+        super.addHits(file, line, hits);
+      }
+    }
+
+    @Override
+    public void appendCondition(String file, int line, boolean covered) {
+      if (accepted.contains(file)) {
+        super.appendCondition(file, line, covered);
+      }
+    }
+
+    @Override
+    public void addConditions(String file, int line, int conditions, long coveredConditionsMask) {
+      if (accepted.contains(file)) {
+        super.addConditions(file, line, conditions, coveredConditionsMask);
+      }
+    }
+
+    @Override
+    void addAll(String file, LineHits lineHits) {
+      if (accepted.contains(file)) {
+        super.addAll(file, lineHits);
+      }
+    }
+
+  }
+
+}
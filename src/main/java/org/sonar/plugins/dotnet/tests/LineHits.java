@@ -0,0 +1,335 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Hits per line of a single file, stored in primitive arrays.
+ * Lines up to {@link #MAX_DENSE_LINE} are kept in an array indexed by line number,
+ * other lines (such as OpenCover hidden sequence points) go into a small open addressing map.
+ * Branch conditions are only kept for dense lines, as a count and a mask of the covered ones per line.
+ */
+class LineHits {
+
+  static final int MAX_DENSE_LINE = 1 << 16;
+
+  private static final int INITIAL_DENSE_LENGTH = 64;
+  private static final int INITIAL_SPARSE_CAPACITY = 16;
+
+  private int[] denseHits = new int[0];
+  private final BitSet denseLines = new BitSet();
+
+  private int[] sparseKeys;
+  private int[] sparseHits;
+  private BitSet sparseSlots;
+  private int sparseSize;
+
+  private int size;
+
+  private int[] denseConditions = new int[0];
+  private long[] denseCoveredConditions = new long[0];
+  private final BitSet conditionLines = new BitSet();
+  private int conditionLineCount;
+
+  public void add(int line, int hits) {
+    if (line >= 0 && line < MAX_DENSE_LINE) {
+      addDense(line, hits);
+    } else {
+      addSparse(line, hits);
+    }
+  }
+
+  public void addAll(LineHits other) {
+    for (int line = other.denseLines.nextSetBit(0); line >= 0; line = other.denseLines.nextSetBit(line + 1)) {
+      addDense(line, other.denseHits[line]);
+    }
+
+    if (other.sparseSlots != null) {
+      for (int slot = other.sparseSlots.nextSetBit(0); slot >= 0; slot = other.sparseSlots.nextSetBit(slot + 1)) {
+        addSparse(other.sparseKeys[slot], other.sparseHits[slot]);
+      }
+    }
+
+    for (int line = other.conditionLines.nextSetBit(0); line >= 0; line = other.conditionLines.nextSetBit(line + 1)) {
+      addConditions(line, other.denseConditions[line], other.denseCoveredConditions[line]);
+    }
+  }
+
+  /**
+   * Appends one more condition to the given line, the n-th condition of a line being tracked by the n-th bit of its mask.
+   */
+  public void appendCondition(int line, boolean covered) {
+    if (ensureConditionLine(line)) {
+      int index = denseConditions[line]++;
+      if (covered && index < Long.SIZE) {
+        denseCoveredConditions[line] |= 1L << index;
+      }
+    }
+  }
+
+  /**
+   * Merges the conditions of the same line seen by another report: the conditions are the maximum of both,
+   * and a condition is covered as soon as one of the reports covered it.
+   */
+  public void addConditions(int line, int conditions, long coveredConditionsMask) {
+    if (ensureConditionLine(line)) {
+      denseConditions[line] = Math.max(denseConditions[line], conditions);
+      denseCoveredConditions[line] |= coveredConditionsMask;
+    }
+  }
+
+  /**
+   * Returns the next line having conditions, starting from the given one, or -1 if there is none.
+   */
+  public int nextConditionLine(int fromLine) {
+    return conditionLines.nextSetBit(fromLine);
+  }
+
+  public int conditions(int line) {
+    return conditionLines.get(line) ? denseConditions[line] : 0;
+  }
+
+  public long coveredConditionsMask(int line) {
+    return conditionLines.get(line) ? denseCoveredConditions[line] : 0;
+  }
+
+  public int coveredConditions(int line) {
+    return Math.min(conditions(line), Long.bitCount(coveredConditionsMask(line)));
+  }
+
+  public int conditionLineCount() {
+    return conditionLineCount;
+  }
+
+  public boolean contains(int line) {
+    if (line >= 0 && line < MAX_DENSE_LINE) {
+      return denseLines.get(line);
+    }
+    return sparseSlots != null && sparseSlots.get(sparseSlot(sparseKeys, sparseSlots, line));
+  }
+
+  /**
+   * Returns the hits of the given line, which must be contained.
+   */
+  public int hits(int line) {
+    if (line >= 0 && line < MAX_DENSE_LINE) {
+      return denseHits[line];
+    }
+    return sparseHits[sparseSlot(sparseKeys, sparseSlots, line)];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int cellCount() {
+    return size + conditionLineCount;
+  }
+
+  public Map<Integer, Integer> asMap() {
+    return new LineHitsMap();
+  }
+
+  /**
+   * @return the conditions, or the covered conditions, of each line having conditions, in line order
+   */
+  public Map<Integer, Integer> conditionsAsMap(boolean covered) {
+    if (conditionLineCount == 0) {
+      return Collections.emptyMap();
+    }
+
+    Map<Integer, Integer> result = new TreeMap<Integer, Integer>();
+    for (int line = conditionLines.nextSetBit(0); line >= 0; line = conditionLines.nextSetBit(line + 1)) {
+      result.put(line, covered ? coveredConditions(line) : denseConditions[line]);
+    }
+    return result;
+  }
+
+  public Map<Integer, Long> coveredConditionsMasksAsMap() {
+    Map<Integer, Long> result = new TreeMap<Integer, Long>();
+    for (int line = conditionLines.nextSetBit(0); line >= 0; line = conditionLines.nextSetBit(line + 1)) {
+      result.put(line, denseCoveredConditions[line]);
+    }
+    return result;
+  }
+
+  private void addDense(int line, int hits) {
+    if (line >= denseHits.length) {
+      int newLength = Math.max(line + 1, Math.max(INITIAL_DENSE_LENGTH, denseHits.length * 2));
+      denseHits = Arrays.copyOf(denseHits, Math.min(newLength, MAX_DENSE_LINE));
+    }
+
+    if (denseLines.get(line)) {
+      denseHits[line] += hits;
+    } else {
+      denseLines.set(line);
+      denseHits[line] = hits;
+      size++;
+    }
+  }
+
+  private boolean ensureConditionLine(int line) {
+    if (line < 0 || line >= MAX_DENSE_LINE) {
+      return false;
+    }
+
+    if (line >= denseConditions.length) {
+      int newLength = Math.min(Math.max(line + 1, Math.max(INITIAL_DENSE_LENGTH, denseConditions.length * 2)), MAX_DENSE_LINE);
+      denseConditions = Arrays.copyOf(denseConditions, newLength);
+      denseCoveredConditions = Arrays.copyOf(denseCoveredConditions, newLength);
+    }
+
+    if (!conditionLines.get(line)) {
+      conditionLines.set(line);
+      conditionLineCount++;
+    }
+    return true;
+  }
+
+  private void addSparse(int line, int hits) {
+    if (sparseSlots == null) {
+      sparseKeys = new int[INITIAL_SPARSE_CAPACITY];
+      sparseHits = new int[INITIAL_SPARSE_CAPACITY];
+      sparseSlots = new BitSet(INITIAL_SPARSE_CAPACITY);
+    }
+
+    int slot = sparseSlot(sparseKeys, sparseSlots, line);
+    if (sparseSlots.get(slot)) {
+      sparseHits[slot] += hits;
+      return;
+    }
+
+    sparseSlots.set(slot);
+    sparseKeys[slot] = line;
+    sparseHits[slot] = hits;
+    sparseSize++;
+    size++;
+
+    if (sparseSize * 2 > sparseKeys.length) {
+      rehashSparse();
+    }
+  }
+
+  private void rehashSparse() {
+    int[] oldKeys = sparseKeys;
+    int[] oldHits = sparseHits;
+    BitSet oldSlots = sparseSlots;
+
+    sparseKeys = new int[oldKeys.length * 2];
+    sparseHits = new int[oldKeys.length * 2];
+    sparseSlots = new BitSet(sparseKeys.length);
+
+    for (int oldSlot = oldSlots.nextSetBit(0); oldSlot >= 0; oldSlot = oldSlots.nextSetBit(oldSlot + 1)) {
+      int slot = sparseSlot(sparseKeys, sparseSlots, oldKeys[oldSlot]);
+      sparseSlots.set(slot);
+      sparseKeys[slot] = oldKeys[oldSlot];
+      sparseHits[slot] = oldHits[oldSlot];
+    }
+  }
+
+  private static int sparseSlot(int[] keys, BitSet slots, int line) {
+    int mask = keys.length - 1;
+    int hash = line * 0x9E3779B9;
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    while (slots.get(slot) && keys[slot] != line) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private class LineHitsMap extends AbstractMap<Integer, Integer> {
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return key instanceof Integer && contains((Integer) key);
+    }
+
+    @Override
+    public Integer get(Object key) {
+      return containsKey(key) ? hits((Integer) key) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, Integer>> entrySet() {
+      return new AbstractSet<Map.Entry<Integer, Integer>>() {
+
+        @Override
+        public Iterator<Map.Entry<Integer, Integer>> iterator() {
+          return new LineHitsIterator();
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+
+      };
+    }
+
+  }
+
+  private class LineHitsIterator implements Iterator<Map.Entry<Integer, Integer>> {
+
+    private int nextDense = denseLines.nextSetBit(0);
+    private int nextSparse = sparseSlots == null ? -1 : sparseSlots.nextSetBit(0);
+
+    @Override
+    public boolean hasNext() {
+      return nextDense >= 0 || nextSparse >= 0;
+    }
+
+    @Override
+    public Map.Entry<Integer, Integer> next() {
+      Map.Entry<Integer, Integer> entry;
+      if (nextDense >= 0) {
+        entry = new AbstractMap.SimpleImmutableEntry<Integer, Integer>(nextDense, denseHits[nextDense]);
+        nextDense = denseLines.nextSetBit(nextDense + 1);
+      } else if (nextSparse >= 0) {
+        entry = new AbstractMap.SimpleImmutableEntry<Integer, Integer>(sparseKeys[nextSparse], sparseHits[nextSparse]);
+        nextSparse = sparseSlots.nextSetBit(nextSparse + 1);
+      } else {
+        throw new NoSuchElementException();
+      }
+      return entry;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+}
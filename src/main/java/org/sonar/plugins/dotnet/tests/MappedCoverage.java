@@ -0,0 +1,149 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only coverage backed by a memory-mapped {@link CoverageSnapshot}: the hits of a file are only decoded from the mapping
+ * when looked up, and the last decoded file is kept as the hits and conditions of a file are usually looked up together.
+ */
+public class MappedCoverage implements CoverageView {
+
+  private final List<ReportFingerprint> reports;
+  private final Map<String, Integer> offsets;
+  private final Set<String> files;
+  private final int cellCount;
+  private final ByteBuffer data;
+
+  private String lastFile;
+  private LineHits lastLineHits;
+
+  MappedCoverage(List<ReportFingerprint> reports, String[] paths, int[] offsets, int cellCount, ByteBuffer data) {
+    this.reports = ImmutableList.copyOf(reports);
+    this.offsets = Maps.newHashMapWithExpectedSize(paths.length);
+    for (int i = 0; i < paths.length; i++) {
+      this.offsets.put(paths[i], offsets[i]);
+    }
+    this.files = ImmutableSet.copyOf(paths);
+    this.cellCount = cellCount;
+    this.data = data;
+  }
+
+  /**
+   * @return the fingerprints of the reports this snapshot was built from
+   */
+  public List<ReportFingerprint> reports() {
+    return reports;
+  }
+
+  @Override
+  public void materialize(Collection<String> files) {
+    // The hits are decoded from the mapping when looked up
+  }
+
+  @Override
+  public Set<String> files() {
+    return files;
+  }
+
+  @Override
+  public int cellCount() {
+    return cellCount;
+  }
+
+  @Override
+  public Map<Integer, Integer> hits(String file) {
+    return offsets.containsKey(file) ? lineHits(file).asMap() : Collections.<Integer, Integer>emptyMap();
+  }
+
+  @Override
+  public Map<Integer, Integer> conditions(String file) {
+    return offsets.containsKey(file) ? lineHits(file).conditionsAsMap(false) : Collections.<Integer, Integer>emptyMap();
+  }
+
+  @Override
+  public Map<Integer, Integer> coveredConditions(String file) {
+    return offsets.containsKey(file) ? lineHits(file).conditionsAsMap(true) : Collections.<Integer, Integer>emptyMap();
+  }
+
+  @Override
+  public Map<Integer, Long> coveredConditionsMasks(String file) {
+    return offsets.containsKey(file) ? lineHits(file).coveredConditionsMasksAsMap() : Collections.<Integer, Long>emptyMap();
+  }
+
+  private synchronized LineHits lineHits(String file) {
+    if (!file.equals(lastFile)) {
+      lastLineHits = decode(offsets.get(file));
+      lastFile = file;
+    }
+    return lastLineHits;
+  }
+
+  private LineHits decode(int offset) {
+    ByteBuffer buffer = data.duplicate();
+    buffer.position(offset);
+    LineHits lineHits = new LineHits();
+    try {
+      CoverageCodec.readFile(new DataInputStream(new ByteBufferInputStream(buffer)), lineHits);
+    } catch (IOException e) {
+      throw new IllegalStateException("The coverage snapshot is corrupted", e);
+    }
+    return lineHits;
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, read);
+      return read;
+    }
+
+  }
+
+}
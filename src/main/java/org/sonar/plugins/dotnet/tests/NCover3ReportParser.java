@@ -43,6 +43,9 @@ public class NCover3ReportParser implements CoverageParser {
     private XmlParserHelper xmlParserHelper;
     private final Map<String, String> documents = Maps.newHashMap();
     private final Coverage coverage;
+    private final XmlParserHelper.Attribute segmentPointDoc = new XmlParserHelper.Attribute("doc");
+    private final XmlParserHelper.Attribute segmentPointLine = new XmlParserHelper.Attribute("l");
+    private final XmlParserHelper.Attribute segmentPointVisits = new XmlParserHelper.Attribute("vc");
 
     public Parser(File file, Coverage coverage) {
       this.file = file;
@@ -78,7 +81,7 @@ public class NCover3ReportParser implements CoverageParser {
 
       if (!isExcludedId(id)) {
         try {
-          documents.put(id, new File(url).getCanonicalPath());
+          documents.put(id, CanonicalPathCache.canonicalPath(url));
         } catch (IOException e) {
           LOG.debug("Skipping the import of NCover3 code coverage for the invalid file path: " + url
             + " at line " + xmlParserHelper.stream().getLocation().getLineNumber(), e);
@@ -91,9 +94,9 @@ public class NCover3ReportParser implements CoverageParser {
     }
 
     private void handleSegmentPointTag() {
-      String doc = xmlParserHelper.getRequiredAttribute("doc");
-      int line = xmlParserHelper.getRequiredIntAttribute("l");
-      int vc = xmlParserHelper.getRequiredIntAttribute("vc");
+      String doc = xmlParserHelper.getRequiredAttribute(segmentPointDoc);
+      int line = xmlParserHelper.getRequiredIntAttribute(segmentPointLine);
+      int vc = xmlParserHelper.getRequiredIntAttribute(segmentPointVisits);
 
       if (documents.containsKey(doc) && !isExcludedLine(line)) {
         coverage.addHits(documents.get(doc), line, vc);
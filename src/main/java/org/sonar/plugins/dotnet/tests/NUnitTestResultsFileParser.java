@@ -22,6 +22,8 @@ package org.sonar.plugins.dotnet.tests;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
 
 public class NUnitTestResultsFileParser implements UnitTestResultsParser {
@@ -50,6 +52,7 @@ public class NUnitTestResultsFileParser implements UnitTestResultsParser {
         xmlParserHelper = new XmlParserHelper(file);
         checkRootTag();
         handleTestResultsTag();
+        dispatchTags();
       } finally {
         if (xmlParserHelper != null) {
           xmlParserHelper.close();
@@ -74,6 +77,53 @@ public class NUnitTestResultsFileParser implements UnitTestResultsParser {
 
       unitTestResults.add(tests, passed, skipped, failures, errors);
     }
+
+    private void dispatchTags() {
+      String tagName;
+      while ((tagName = xmlParserHelper.nextTag()) != null) {
+        if ("test-case".equals(tagName)) {
+          handleTestCaseTag();
+        }
+      }
+    }
+
+    private void handleTestCaseTag() {
+      String name = xmlParserHelper.getRequiredAttribute("name");
+      String result = xmlParserHelper.getAttribute("result");
+      String time = xmlParserHelper.getAttribute("time");
+
+      unitTestResults.addTestCase(name, outcome(result, xmlParserHelper.getAttribute("success")), time == null ? 0 : durationMillis(time));
+    }
+
+    /**
+     * The "result" attribute appeared with NUnit 2.5, older versions only give "executed" and "success".
+     */
+    private UnitTestResults.Outcome outcome(@Nullable String result, @Nullable String success) {
+      if (result == null) {
+        if ("False".equals(xmlParserHelper.getAttribute("executed"))) {
+          return UnitTestResults.Outcome.SKIPPED;
+        }
+        return "True".equals(success) ? UnitTestResults.Outcome.PASSED : UnitTestResults.Outcome.FAILED;
+      } else if ("Success".equals(result)) {
+        return UnitTestResults.Outcome.PASSED;
+      } else if ("Failure".equals(result)) {
+        return UnitTestResults.Outcome.FAILED;
+      } else if ("Error".equals(result)) {
+        return UnitTestResults.Outcome.ERROR;
+      }
+      return UnitTestResults.Outcome.SKIPPED;
+    }
+
+    /**
+     * Parses a duration in seconds, such as "0.125".
+     */
+    private long durationMillis(String time) {
+      try {
+        return Math.round(Double.parseDouble(time) * 1000);
+      } catch (NumberFormatException e) {
+        throw xmlParserHelper.parseError("Expected a duration instead of \"" + time + "\" for the attribute \"time\"");
+      }
+    }
   }
 
 }
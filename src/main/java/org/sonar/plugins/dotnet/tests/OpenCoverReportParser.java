@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 
 public class OpenCoverReportParser implements CoverageParser {
@@ -43,7 +44,18 @@ public class OpenCoverReportParser implements CoverageParser {
     private XmlParserHelper xmlParserHelper;
     private final Map<String, String> files = Maps.newHashMap();
     private final Coverage coverage;
+    private Coverage moduleBranches = new Coverage();
     private String fileRef;
+    private int[] sequencePointOffsets = new int[16];
+    private int[] sequencePointLines = new int[16];
+    private int sequencePoints;
+    private final XmlParserHelper.Attribute sequencePointLine = new XmlParserHelper.Attribute("sl");
+    private final XmlParserHelper.Attribute sequencePointVisits = new XmlParserHelper.Attribute("vc");
+    private final XmlParserHelper.Attribute sequencePointOffset = new XmlParserHelper.Attribute("offset");
+    private final XmlParserHelper.Attribute branchPointLine = new XmlParserHelper.Attribute("sl");
+    private final XmlParserHelper.Attribute branchPointVisits = new XmlParserHelper.Attribute("vc");
+    private final XmlParserHelper.Attribute branchPointOffset = new XmlParserHelper.Attribute("offset");
+    private final XmlParserHelper.Attribute branchPointFileId = new XmlParserHelper.Attribute("fileid");
 
     public Parser(File file, Coverage coverage) {
       this.file = file;
@@ -55,6 +67,7 @@ public class OpenCoverReportParser implements CoverageParser {
         xmlParserHelper = new XmlParserHelper(file);
         xmlParserHelper.checkRootTag("CoverageSession");
         dispatchTags();
+        addModuleBranches();
       } finally {
         if (xmlParserHelper != null) {
           xmlParserHelper.close();
@@ -65,12 +78,18 @@ public class OpenCoverReportParser implements CoverageParser {
     private void dispatchTags() {
       String tagName;
       while ((tagName = xmlParserHelper.nextTag()) != null) {
-        if ("File".equals(tagName)) {
+        if ("Module".equals(tagName)) {
+          addModuleBranches();
+        } else if ("File".equals(tagName)) {
           handleFileTag();
         } else if ("FileRef".equals(tagName)) {
           handleFileRef();
+        } else if ("Method".equals(tagName)) {
+          sequencePoints = 0;
         } else if ("SequencePoint".equals(tagName)) {
           handleSegmentPointTag();
+        } else if ("BranchPoint".equals(tagName)) {
+          handleBranchPointTag();
         }
       }
     }
@@ -84,7 +103,7 @@ public class OpenCoverReportParser implements CoverageParser {
       String fullPath = xmlParserHelper.getRequiredAttribute("fullPath");
 
       try {
-        files.put(uid, new File(fullPath).getCanonicalPath());
+        files.put(uid, CanonicalPathCache.canonicalPath(fullPath));
       } catch (IOException e) {
         LOG.debug("Skipping the import of OpenCover code coverage for the invalid file path: " + fullPath
           + " at line " + xmlParserHelper.stream().getLocation().getLineNumber(), e);
@@ -92,12 +111,65 @@ public class OpenCoverReportParser implements CoverageParser {
     }
 
     private void handleSegmentPointTag() {
-      int line = xmlParserHelper.getRequiredIntAttribute("sl");
-      int vc = xmlParserHelper.getRequiredIntAttribute("vc");
+      int line = xmlParserHelper.getRequiredIntAttribute(sequencePointLine);
+      int vc = xmlParserHelper.getRequiredIntAttribute(sequencePointVisits);
 
       if (files.containsKey(fileRef)) {
         coverage.addHits(files.get(fileRef), line, vc);
       }
+
+      String offset = xmlParserHelper.getAttribute(sequencePointOffset);
+      if (offset != null) {
+        addSequencePoint(xmlParserHelper.getRequiredIntAttribute(sequencePointOffset), line);
+      }
+    }
+
+    private void addSequencePoint(int offset, int line) {
+      if (sequencePoints == sequencePointOffsets.length) {
+        sequencePointOffsets = Arrays.copyOf(sequencePointOffsets, sequencePoints * 2);
+        sequencePointLines = Arrays.copyOf(sequencePointLines, sequencePoints * 2);
+      }
+      sequencePointOffsets[sequencePoints] = offset;
+      sequencePointLines[sequencePoints] = line;
+      sequencePoints++;
+    }
+
+    /**
+     * Older OpenCover versions do not give the line of branch points: they are then attributed
+     * to the last sequence point of the method starting at or before their IL offset.
+     */
+    private void handleBranchPointTag() {
+      int vc = xmlParserHelper.getRequiredIntAttribute(branchPointVisits);
+      int line = xmlParserHelper.getAttribute(branchPointLine) != null ?
+        xmlParserHelper.getRequiredIntAttribute(branchPointLine) :
+        enclosingSequencePointLine(xmlParserHelper.getRequiredIntAttribute(branchPointOffset));
+      String fileId = xmlParserHelper.getAttribute(branchPointFileId);
+      String path = files.get(fileId != null ? fileId : fileRef);
+
+      if (line > 0 && path != null) {
+        moduleBranches.appendCondition(path, line, vc > 0);
+      }
+    }
+
+    /**
+     * Without -mergebyhash, a source file compiled into several assemblies is listed under each of their modules:
+     * the conditions of a line are counted per module, then merged like the ones of distinct reports.
+     */
+    private void addModuleBranches() {
+      coverage.add(moduleBranches);
+      moduleBranches = new Coverage();
+    }
+
+    private int enclosingSequencePointLine(int offset) {
+      int line = -1;
+      int lineOffset = Integer.MIN_VALUE;
+      for (int i = 0; i < sequencePoints; i++) {
+        if (sequencePointOffsets[i] <= offset && sequencePointOffsets[i] >= lineOffset) {
+          lineOffset = sequencePointOffsets[i];
+          line = sequencePointLines[i];
+        }
+      }
+      return line;
     }
 
   }
@@ -0,0 +1,119 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.File;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses files on a pool of workers. Each worker parses into its own partial coverage,
+ * and all partial coverages are summed up into the target coverage once every file has been parsed.
+ */
+class ParallelCoverageParsing {
+
+  private static final ThreadLocal<Boolean> WORKER = new ThreadLocal<Boolean>();
+
+  private ParallelCoverageParsing() {
+  }
+
+  public static void parse(List<Task> tasks, Coverage coverage, int threads, String threadNamePrefix) {
+    final Queue<Task> queue = new ConcurrentLinkedQueue<Task>(tasks);
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setNameFormat(threadNamePrefix + "-%d").setDaemon(true).build());
+    try {
+      List<Future<Coverage>> partialCoverages = Lists.newArrayList();
+      for (int i = 0; i < threads; i++) {
+        partialCoverages.add(executor.submit(new Callable<Coverage>() {
+          @Override
+          public Coverage call() {
+            Coverage partialCoverage = new Coverage();
+            WORKER.set(Boolean.TRUE);
+            try {
+              Task task;
+              while ((task = queue.poll()) != null) {
+                task.parse(partialCoverage);
+              }
+            } catch (RuntimeException e) {
+              queue.clear();
+              throw e;
+            }
+            return partialCoverage;
+          }
+        }));
+      }
+
+      for (Future<Coverage> partialCoverage : partialCoverages) {
+        coverage.add(await(partialCoverage));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Nested pools would multiply the number of threads: a file parsed on a worker should parse its own parts sequentially.
+   */
+  public static boolean isWorkerThread() {
+    return WORKER.get() != null;
+  }
+
+  private static Coverage await(Future<Coverage> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  public static class Task {
+
+    private final CoverageParser parser;
+    private final File file;
+
+    public Task(CoverageParser parser, File file) {
+      this.parser = parser;
+      this.file = file;
+    }
+
+    public File file() {
+      return file;
+    }
+
+    public void parse(Coverage coverage) {
+      parser.parse(file, coverage);
+    }
+
+  }
+
+}
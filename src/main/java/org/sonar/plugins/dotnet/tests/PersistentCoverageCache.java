@@ -0,0 +1,146 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.io.Closeables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stores parsed coverage reports on disk, so that later analyses can skip the parsing of unchanged reports.
+ * Each entry is keyed by the {@link ReportFingerprint} of its report, and is ignored as soon as the report changes.
+ */
+public class PersistentCoverageCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PersistentCoverageCache.class);
+
+  public static final String WORKING_DIRECTORY_PROPERTY_KEY = "sonar.working.directory";
+  public static final String DEFAULT_WORKING_DIRECTORY = ".sonar";
+  public static final String CACHE_FOLDER = "dotnet-coverage-cache";
+
+  private static final int MAGIC = 0x444E4343;
+  private static final int VERSION = 2;
+
+  private final File directory;
+  private final boolean useContentHash;
+  private final ConcurrentMap<String, ReportFingerprint> fingerprints = new ConcurrentHashMap<String, ReportFingerprint>();
+
+  public PersistentCoverageCache(File directory, boolean useContentHash) {
+    this.directory = directory;
+    this.useContentHash = useContentHash;
+  }
+
+  public File directory() {
+    return directory;
+  }
+
+  /**
+   * The fingerprint of a report is computed once per instance, before its parsing, so that a report modified
+   * during its parsing is not considered as up to date by the next analysis.
+   */
+  public ReportFingerprint fingerprint(File report) throws IOException {
+    String path = report.getAbsolutePath();
+    ReportFingerprint fingerprint = fingerprints.get(path);
+    if (fingerprint == null) {
+      fingerprint = ReportFingerprint.of(report, useContentHash);
+      ReportFingerprint previous = fingerprints.putIfAbsent(path, fingerprint);
+      if (previous != null) {
+        fingerprint = previous;
+      }
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Loads the cached coverage of the given report into the given coverage.
+   *
+   * @return false if there is no up-to-date entry for this report, in which case the coverage is left untouched
+   */
+  public boolean load(ReportFingerprint fingerprint, Coverage coverage) {
+    File entry = entryFile(fingerprint.path());
+    if (!entry.isFile()) {
+      return false;
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(BinaryFiles.open(entry));
+      if (!BinaryFiles.readHeader(in, MAGIC, VERSION)) {
+        LOG.debug("Ignoring the persisted coverage entry with an unknown format: " + entry.getAbsolutePath());
+        return false;
+      }
+
+      ReportFingerprint cachedFingerprint = ReportFingerprint.read(in);
+      if (!fingerprint.equals(cachedFingerprint)) {
+        LOG.debug("Ignoring the stale persisted coverage of " + cachedFingerprint + ", the report is now " + fingerprint);
+        return false;
+      }
+
+      Coverage cachedCoverage = new Coverage();
+      CoverageCodec.read(in, cachedCoverage);
+      coverage.add(cachedCoverage);
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Unable to read the persisted coverage entry " + entry.getAbsolutePath() + ", it will be rebuilt", e);
+      return false;
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+  }
+
+  /**
+   * @param fingerprint the fingerprint of the report, as computed before its parsing
+   */
+  public void save(final ReportFingerprint fingerprint, final Coverage coverage) {
+    try {
+      BinaryFiles.write(entryFile(fingerprint.path()), MAGIC, VERSION, new BinaryFiles.Content() {
+        @Override
+        public void write(DataOutputStream out) throws IOException {
+          fingerprint.write(out);
+          CoverageCodec.write(coverage, out);
+        }
+      });
+    } catch (IOException e) {
+      LOG.warn("Unable to persist the coverage of " + fingerprint.path(), e);
+    }
+  }
+
+  /**
+   * Deletes the entry of a report which is no longer imported.
+   */
+  public void remove(String reportPath) {
+    File entry = entryFile(reportPath);
+    if (entry.exists() && !entry.delete()) {
+      LOG.warn("Unable to delete the persisted coverage entry " + entry.getAbsolutePath());
+    }
+  }
+
+  private File entryFile(String reportPath) {
+    return new File(directory, ReportFingerprint.pathHash(reportPath) + ".bin");
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Objects;
+import com.google.common.io.Closeables;
+
+import javax.annotation.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identifies a given version of a report file: its absolute path, length, last modification time and optionally a hash of its contents.
+ */
+public class ReportFingerprint {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final String path;
+  private final long length;
+  private final long lastModified;
+  private final String contentHash;
+
+  public ReportFingerprint(String path, long length, long lastModified, @Nullable String contentHash) {
+    this.path = path;
+    this.length = length;
+    this.lastModified = lastModified;
+    this.contentHash = contentHash == null ? "" : contentHash;
+  }
+
+  /**
+   * The length, last modification time and hash of an archive entry are the ones of its whole archive.
+   */
+  public static ReportFingerprint of(File file, boolean withContentHash) throws IOException {
+    File physicalFile = ReportStreams.physicalFile(file);
+    return new ReportFingerprint(file.getAbsolutePath(), physicalFile.length(), physicalFile.lastModified(), withContentHash ? sha1(physicalFile) : null);
+  }
+
+  public static ReportFingerprint read(DataInput in) throws IOException {
+    return new ReportFingerprint(in.readUTF(), in.readLong(), in.readLong(), in.readUTF());
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeUTF(path);
+    out.writeLong(length);
+    out.writeLong(lastModified);
+    out.writeUTF(contentHash);
+  }
+
+  public String path() {
+    return path;
+  }
+
+  public static String pathHash(String path) {
+    try {
+      return toHex(MessageDigest.getInstance("SHA-1").digest(path.getBytes("UTF-8")));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static String sha1(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+
+    return toHex(digest.digest());
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+      sb.append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof ReportFingerprint)) {
+      return false;
+    }
+    ReportFingerprint other = (ReportFingerprint) obj;
+    return path.equals(other.path) &&
+      length == other.length &&
+      lastModified == other.lastModified &&
+      contentHash.equals(other.contentHash);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(path, length, lastModified, contentHash);
+  }
+
+  @Override
+  public String toString() {
+    return path + " (" + length + " bytes, modified " + lastModified + (contentHash.isEmpty() ? "" : ", sha1 " + contentHash) + ")";
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The first bytes of a report, decompressed if needed, used to detect its format without reading it entirely.
+ */
+public class ReportHeader {
+
+  public static final int DEFAULT_SIZE = 4 * 1024;
+
+  private static final String BYTE_ORDER_MARK = "\uFEFF";
+
+  private final byte[] bytes;
+  private final String text;
+
+  public ReportHeader(byte[] bytes) {
+    this.bytes = bytes;
+    String decoded = new String(bytes, Charsets.UTF_8);
+    this.text = decoded.startsWith(BYTE_ORDER_MARK) ? decoded.substring(BYTE_ORDER_MARK.length()) : decoded;
+  }
+
+  public static ReportHeader read(File file) {
+    return read(file, DEFAULT_SIZE);
+  }
+
+  public static ReportHeader read(File file, int size) {
+    InputStream in = null;
+    try {
+      in = ReportStreams.open(file);
+      byte[] buffer = new byte[size];
+      int length = 0;
+      int read;
+      while (length < size && (read = in.read(buffer, length, size - length)) != -1) {
+        length += read;
+      }
+      return new ReportHeader(Arrays.copyOf(buffer, length));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+  }
+
+  public byte[] bytes() {
+    return bytes;
+  }
+
+  /**
+   * The header decoded as UTF-8, without its byte order mark. Its last character may be truncated.
+   */
+  public String text() {
+    return text;
+  }
+
+  public boolean startsWith(String prefix) {
+    return text.startsWith(prefix);
+  }
+
+}
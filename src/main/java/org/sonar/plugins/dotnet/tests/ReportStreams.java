@@ -0,0 +1,207 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.io.ByteStreams;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens the report files, decompressing gzip and zip ones on the fly based on their first bytes, whatever their extension.
+ * An entry of a zip archive is designated by the path of the archive followed by {@link #ARCHIVE_ENTRY_SEPARATOR} and the entry name,
+ * such as "reports.zip!/tests/results.trx", and a zip archive opened directly is read from its first file entry.
+ * The separator only designates an entry when the path before it is an existing zip archive, so that other paths may contain it.
+ */
+public final class ReportStreams {
+
+  public static final String ARCHIVE_ENTRY_SEPARATOR = "!/";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAGIC_SIZE = 4;
+
+  private ReportStreams() {
+  }
+
+  public static InputStream open(File file) throws IOException {
+    File archive = archive(file);
+    if (archive == null) {
+      return decompress(new FileInputStream(file), file);
+    }
+
+    final ZipFile zipFile = new ZipFile(archive);
+    try {
+      ZipEntry entry = zipFile.getEntry(entryName(file, archive));
+      if (entry == null || entry.isDirectory()) {
+        throw new FileNotFoundException(file.getAbsolutePath() + " (No such zip archive entry)");
+      }
+      InputStream in = new FilterInputStream(zipFile.getInputStream(entry)) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            zipFile.close();
+          }
+        }
+      };
+      return decompress(in, file);
+    } catch (IOException e) {
+      zipFile.close();
+      throw e;
+    }
+  }
+
+  public static boolean exists(File file) {
+    File archive = archive(file);
+    if (archive == null) {
+      return file.exists();
+    }
+
+    try {
+      ZipFile zipFile = new ZipFile(archive);
+      try {
+        ZipEntry entry = zipFile.getEntry(entryName(file, archive));
+        return entry != null && !entry.isDirectory();
+      } finally {
+        zipFile.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the file actually stored on disk: the archive of an archive entry, or the file itself.
+   */
+  public static File physicalFile(File file) {
+    File archive = archive(file);
+    return archive == null ? file : archive;
+  }
+
+  /**
+   * Returns the zip archive containing the given file, or null if it is not an archive entry.
+   */
+  @Nullable
+  public static File archive(File file) {
+    if (file.exists()) {
+      return null;
+    }
+
+    String path = file.getPath();
+    int index = separatorIndex(path, 0);
+    while (index != -1) {
+      File archive = new File(path.substring(0, index));
+      if (isZipArchive(archive)) {
+        return archive;
+      }
+      index = separatorIndex(path, index + 1);
+    }
+    return null;
+  }
+
+  private static boolean isZipArchive(File file) {
+    if (!file.isFile()) {
+      return false;
+    }
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        byte[] magic = new byte[MAGIC_SIZE];
+        return ByteStreams.read(in, magic, 0, MAGIC_SIZE) == MAGIC_SIZE && isZipMagic(magic);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static boolean isZipMagic(byte[] magic) {
+    return magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+  }
+
+  public static File archiveEntry(File archive, String entryName) {
+    return new File(archive.getPath() + ARCHIVE_ENTRY_SEPARATOR + entryName);
+  }
+
+  private static String entryName(File file, File archive) {
+    return file.getPath().substring(archive.getPath().length() + ARCHIVE_ENTRY_SEPARATOR.length()).replace(File.separatorChar, '/');
+  }
+
+  private static int separatorIndex(String path, int fromIndex) {
+    int index = path.indexOf('!', fromIndex);
+    while (index != -1 && index + 1 < path.length()) {
+      char next = path.charAt(index + 1);
+      if (next == '/' || next == File.separatorChar) {
+        return index;
+      }
+      index = path.indexOf('!', index + 1);
+    }
+    return -1;
+  }
+
+  private static InputStream decompress(InputStream in, File file) throws IOException {
+    BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+    try {
+      byte[] magic = new byte[MAGIC_SIZE];
+      buffered.mark(MAGIC_SIZE);
+      int length = 0;
+      int read;
+      while (length < MAGIC_SIZE && (read = buffered.read(magic, length, MAGIC_SIZE - length)) != -1) {
+        length += read;
+      }
+      buffered.reset();
+
+      if (length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+        return decompress(new GZIPInputStream(buffered, BUFFER_SIZE), file);
+      } else if (length == MAGIC_SIZE && isZipMagic(magic)) {
+        return decompress(firstFileEntry(new ZipInputStream(buffered), file), file);
+      }
+      return buffered;
+    } catch (IOException e) {
+      buffered.close();
+      throw e;
+    }
+  }
+
+  private static InputStream firstFileEntry(ZipInputStream in, File file) throws IOException {
+    ZipEntry entry;
+    while ((entry = in.getNextEntry()) != null) {
+      if (!entry.isDirectory()) {
+        return in;
+      }
+    }
+    in.close();
+    throw new IOException("The zip archive " + file.getAbsolutePath() + " does not contain any file.");
+  }
+
+}
@@ -19,14 +19,36 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
 public class UnitTestResults {
 
+  private static final int INITIAL_TEST_CASES_CAPACITY = 64;
+
+  public enum Outcome {
+    PASSED, FAILED, ERROR, SKIPPED
+  }
+
   private int tests;
   private int passed;
   private int skipped;
   private int failures;
   private int errors;
 
+  /**
+   * The individual test cases are kept in parallel arrays, as there can be hundreds of thousands of them.
+   */
+  private final List<String> testCaseNames = Lists.newArrayList();
+  private byte[] testCaseOutcomes = new byte[INITIAL_TEST_CASES_CAPACITY];
+  private long[] testCaseDurations = new long[INITIAL_TEST_CASES_CAPACITY];
+  private long executionTime;
+
   public void add(int tests, int passed, int skipped, int failures, int errors) {
     this.tests += tests;
     this.passed += passed;
@@ -35,6 +57,67 @@ public class UnitTestResults {
     this.errors += errors;
   }
 
+  /**
+   * Records the result of a single test case, whose duration is in milliseconds. The counters are not affected.
+   */
+  public void addTestCase(String name, Outcome outcome, long durationMillis) {
+    int index = testCaseNames.size();
+    if (index == testCaseOutcomes.length) {
+      testCaseOutcomes = Arrays.copyOf(testCaseOutcomes, index * 2);
+      testCaseDurations = Arrays.copyOf(testCaseDurations, index * 2);
+    }
+    testCaseNames.add(name);
+    testCaseOutcomes[index] = (byte) outcome.ordinal();
+    testCaseDurations[index] = durationMillis;
+    executionTime += durationMillis;
+  }
+
+  public int testCases() {
+    return testCaseNames.size();
+  }
+
+  public TestCase testCase(int index) {
+    return new TestCase(testCaseNames.get(index), Outcome.values()[testCaseOutcomes[index]], testCaseDurations[index]);
+  }
+
+  /**
+   * @return the sum of the durations of the test cases, in milliseconds
+   */
+  public double executionTime() {
+    return executionTime;
+  }
+
+  /**
+   * @return the given number of slowest test cases at most, the slowest first
+   */
+  public List<TestCase> slowestTestCases(int count) {
+    if (count <= 0) {
+      return Collections.emptyList();
+    }
+
+    PriorityQueue<Integer> slowest = new PriorityQueue<Integer>(count + 1, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer left, Integer right) {
+        return testCaseDurations[left] < testCaseDurations[right] ? -1 : (testCaseDurations[left] == testCaseDurations[right] ? right.compareTo(left) : 1);
+      }
+    });
+    for (int i = 0; i < testCaseNames.size(); i++) {
+      if (slowest.size() < count) {
+        slowest.add(i);
+      } else if (testCaseDurations[i] > testCaseDurations[slowest.peek()]) {
+        slowest.poll();
+        slowest.add(i);
+      }
+    }
+
+    List<TestCase> result = Lists.newArrayList();
+    while (!slowest.isEmpty()) {
+      result.add(testCase(slowest.poll()));
+    }
+    Collections.reverse(result);
+    return result;
+  }
+
   public double tests() {
     return tests;
   }
@@ -55,4 +138,30 @@ public class UnitTestResults {
     return errors;
   }
 
+  public static class TestCase {
+
+    private final String name;
+    private final Outcome outcome;
+    private final long durationMillis;
+
+    public TestCase(String name, Outcome outcome, long durationMillis) {
+      this.name = name;
+      this.outcome = outcome;
+      this.durationMillis = durationMillis;
+    }
+
+    public String name() {
+      return name;
+    }
+
+    public Outcome outcome() {
+      return outcome;
+    }
+
+    public long durationMillis() {
+      return durationMillis;
+    }
+
+  }
+
 }
@@ -21,10 +21,15 @@ package org.sonar.plugins.dotnet.tests;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.config.Settings;
 
 import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class UnitTestResultsAggregator implements BatchExtension {
 
@@ -60,23 +65,47 @@ public class UnitTestResultsAggregator implements BatchExtension {
   }
 
   public UnitTestResults aggregate(WildcardPatternFileProvider wildcardPatternFileProvider, UnitTestResults unitTestResults) {
+    return aggregate(wildcardPatternFileProvider, unitTestResults, ImportMetrics.current("Unit test results"));
+  }
+
+  public UnitTestResults aggregate(WildcardPatternFileProvider wildcardPatternFileProvider, UnitTestResults unitTestResults, ImportMetrics importMetrics) {
+    Map<String, UnitTestResultsParser> parsers = Maps.newLinkedHashMap();
     if (hasVisualStudioTestResultsFile()) {
-      aggregate(wildcardPatternFileProvider, settings.getString(unitTestConf.visualStudioTestResultsFilePropertyKey()), visualStudioTestResultsFileParser, unitTestResults);
+      parsers.put(unitTestConf.visualStudioTestResultsFilePropertyKey(), visualStudioTestResultsFileParser);
     }
-
     if (hasNUnitTestResultsFile()) {
-      aggregate(wildcardPatternFileProvider, settings.getString(unitTestConf.nunitTestResultsFilePropertyKey()), nunitTestResultsFileParser, unitTestResults);
+      parsers.put(unitTestConf.nunitTestResultsFilePropertyKey(), nunitTestResultsFileParser);
+    }
+
+    List<String> patterns = Lists.newArrayList();
+    for (String propertyKey : parsers.keySet()) {
+      patterns.addAll(reportPathPatterns(settings.getString(propertyKey)));
+    }
+    Map<String, Set<File>> filesByPattern = wildcardPatternFileProvider.listFiles(patterns);
+
+    for (Map.Entry<String, UnitTestResultsParser> entry : parsers.entrySet()) {
+      for (String reportPathPattern : reportPathPatterns(settings.getString(entry.getKey()))) {
+        for (File reportFile : filesByPattern.get(reportPathPattern)) {
+          parse(entry.getValue(), reportFile, unitTestResults, importMetrics);
+        }
+      }
     }
 
     return unitTestResults;
   }
 
-  private void aggregate(WildcardPatternFileProvider wildcardPatternFileProvider, String reportPaths, UnitTestResultsParser parser, UnitTestResults unitTestResults) {
-    for (String reportPathPattern : Splitter.on(',').trimResults().omitEmptyStrings().split(reportPaths)) {
-      for (File reportFile : wildcardPatternFileProvider.listFiles(reportPathPattern)) {
-        parser.parse(reportFile, unitTestResults);
-      }
+  private static void parse(UnitTestResultsParser parser, File reportFile, UnitTestResults unitTestResults, ImportMetrics importMetrics) {
+    double tests = unitTestResults.tests();
+    ImportMetrics.Report report = importMetrics.startReport(parser.getClass().getSimpleName(), reportFile);
+    try {
+      parser.parse(reportFile, unitTestResults);
+    } finally {
+      report.stop(0, (long) (unitTestResults.tests() - tests));
     }
   }
 
+  private static List<String> reportPathPatterns(String reportPaths) {
+    return Lists.newArrayList(Splitter.on(',').trimResults().omitEmptyStrings().split(reportPaths));
+  }
+
 }
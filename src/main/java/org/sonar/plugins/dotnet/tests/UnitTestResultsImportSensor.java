@@ -20,20 +20,36 @@
 package org.sonar.plugins.dotnet.tests;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.resources.Project;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
+import java.util.List;
+import java.util.Locale;
 
 public class UnitTestResultsImportSensor implements Sensor {
 
+  private static final Logger LOG = LoggerFactory.getLogger(UnitTestResultsImportSensor.class);
+  private static final int SLOWEST_TEST_CASES = 10;
+
   private final WildcardPatternFileProvider wildcardPatternFileProvider = new WildcardPatternFileProvider(new File("."), File.separator);
   private final UnitTestResultsAggregator unitTestResultsAggregator;
+  private final Settings settings;
 
   public UnitTestResultsImportSensor(UnitTestResultsAggregator unitTestResultsAggregator) {
+    this(unitTestResultsAggregator, new Settings());
+  }
+
+  public UnitTestResultsImportSensor(UnitTestResultsAggregator unitTestResultsAggregator, Settings settings) {
     this.unitTestResultsAggregator = unitTestResultsAggregator;
+    this.settings = settings;
   }
 
   @Override
@@ -44,13 +60,26 @@ public class UnitTestResultsImportSensor implements Sensor {
   @Override
   public void analyse(Project project, SensorContext context) {
     if (project.isRoot()) {
-      analyze(context, new UnitTestResults());
+      analyze(context, new UnitTestResults(), project.getKey());
     }
   }
 
   @VisibleForTesting
   void analyze(SensorContext context, UnitTestResults unitTestResults) {
-    UnitTestResults aggregatedResults = unitTestResultsAggregator.aggregate(wildcardPatternFileProvider, unitTestResults);
+    analyze(context, unitTestResults, null);
+  }
+
+  private void analyze(SensorContext context, UnitTestResults unitTestResults, @Nullable String moduleKey) {
+    ImportMetrics importMetrics = new ImportMetrics("Unit test results");
+    UnitTestResults aggregatedResults;
+    importMetrics.start();
+    try {
+      aggregatedResults = unitTestResultsAggregator.aggregate(wildcardPatternFileProvider, unitTestResults);
+    } finally {
+      importMetrics.stop();
+    }
+
+    long measureSaveStart = System.nanoTime();
 
     context.saveMeasure(CoreMetrics.TESTS, aggregatedResults.tests());
     context.saveMeasure(CoreMetrics.TEST_ERRORS, aggregatedResults.errors());
@@ -60,6 +89,29 @@ public class UnitTestResultsImportSensor implements Sensor {
     if (aggregatedResults.tests() > 0) {
       context.saveMeasure(CoreMetrics.TEST_SUCCESS_DENSITY, aggregatedResults.passedPercentage());
     }
+    if (aggregatedResults.testCases() > 0) {
+      context.saveMeasure(CoreMetrics.TEST_EXECUTION_TIME, aggregatedResults.executionTime());
+    }
+    importMetrics.setMeasureSaveNanos(System.nanoTime() - measureSaveStart);
+
+    logSlowestTestCases(aggregatedResults);
+    importMetrics.logSummary();
+    if (settings.hasKey(ImportMetrics.JSON_FILE_PROPERTY_KEY)) {
+      importMetrics.appendJson(new File(settings.getString(ImportMetrics.JSON_FILE_PROPERTY_KEY)), moduleKey);
+    }
+  }
+
+  private static void logSlowestTestCases(UnitTestResults unitTestResults) {
+    List<UnitTestResults.TestCase> slowest = unitTestResults.slowestTestCases(SLOWEST_TEST_CASES);
+    if (slowest.isEmpty()) {
+      return;
+    }
+
+    LOG.info(String.format(Locale.ENGLISH, "%d test cases executed in %d ms, the slowest ones being:",
+      unitTestResults.testCases(), (long) unitTestResults.executionTime()));
+    for (UnitTestResults.TestCase testCase : slowest) {
+      LOG.info(String.format(Locale.ENGLISH, "  %d ms %s (%s)", testCase.durationMillis(), testCase.name(), testCase.outcome()));
+    }
   }
 
 }
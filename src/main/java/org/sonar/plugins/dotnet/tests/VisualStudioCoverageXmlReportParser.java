@@ -19,31 +19,48 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
 
 public class VisualStudioCoverageXmlReportParser implements CoverageParser {
 
   private static final Logger LOG = LoggerFactory.getLogger(VisualStudioCoverageXmlReportParser.class);
 
+  /**
+   * Longer ranges can only come from corrupted reports, and would otherwise buffer as many lines.
+   */
+  private static final int MAX_RANGE_LINES = LineHits.MAX_DENSE_LINE;
+
   @Override
   public void parse(File file, Coverage coverage) {
     LOG.info("Parsing the Visual Studio coverage XML report " + file.getAbsolutePath());
     new Parser(file, coverage).parse();
   }
 
+  /**
+   * The ranges of a module come before its source files, so the covered and uncovered lines are buffered per source id.
+   * The lines below {@link LineHits#MAX_DENSE_LINE} are kept in a bit set, each range setting them a word at a time,
+   * which also merges the overlapping ranges, and the few lines above it, such as the 0xFEEFEE hidden line marker, in a set.
+   */
   private static class Parser {
 
     private final File file;
     private XmlParserHelper xmlParserHelper;
-    private final Multimap<Integer, Integer> coveredLines = HashMultimap.create();
-    private final Multimap<Integer, Integer> uncoveredLines = HashMultimap.create();
+    private final Map<Integer, SourceLines> coveredLines = Maps.newHashMap();
+    private final Map<Integer, SourceLines> uncoveredLines = Maps.newHashMap();
     private final Coverage coverage;
+    private final XmlParserHelper.Attribute rangeSource = new XmlParserHelper.Attribute("source_id");
+    private final XmlParserHelper.Attribute rangeCovered = new XmlParserHelper.Attribute("covered");
+    private final XmlParserHelper.Attribute rangeStartLine = new XmlParserHelper.Attribute("start_line");
+    private final XmlParserHelper.Attribute rangeEndLine = new XmlParserHelper.Attribute("end_line");
 
     public Parser(File file, Coverage coverage) {
       this.file = file;
@@ -81,15 +98,26 @@ public class VisualStudioCoverageXmlReportParser implements CoverageParser {
     }
 
     private void handleRangeTag() {
-      int source = xmlParserHelper.getRequiredIntAttribute("source_id");
-      String covered = xmlParserHelper.getRequiredAttribute("covered");
+      int source = xmlParserHelper.getRequiredIntAttribute(rangeSource);
+      String covered = xmlParserHelper.getRequiredAttribute(rangeCovered);
+
+      int startLine = xmlParserHelper.getRequiredIntAttribute(rangeStartLine);
+      int endLine = xmlParserHelper.getAttribute(rangeEndLine) == null ? startLine : xmlParserHelper.getRequiredIntAttribute(rangeEndLine);
 
-      int line = xmlParserHelper.getRequiredIntAttribute("start_line");
+      if (source < 0 || startLine < 0) {
+        throw xmlParserHelper.parseError("Expected a positive \"source_id\" and \"start_line\" instead of " + source + " and " + startLine);
+      }
+      if (endLine < startLine) {
+        throw xmlParserHelper.parseError("Expected an \"end_line\" greater than or equal to the \"start_line\" " + startLine + " instead of " + endLine);
+      }
+      if ((long) endLine - startLine >= MAX_RANGE_LINES) {
+        throw xmlParserHelper.parseError("Expected a range of at most " + MAX_RANGE_LINES + " lines instead of the lines " + startLine + " to " + endLine);
+      }
 
       if ("yes".equals(covered) || "partial".equals(covered)) {
-        coveredLines.put(source, line);
+        sourceLines(coveredLines, source).add(startLine, endLine);
       } else if ("no".equals(covered)) {
-        uncoveredLines.put(source, line);
+        sourceLines(uncoveredLines, source).add(startLine, endLine);
       } else {
         throw xmlParserHelper.parseError("Unsupported \"covered\" value \"" + covered + "\", expected one of \"yes\", \"partial\" or \"no\"");
       }
@@ -101,20 +129,36 @@ public class VisualStudioCoverageXmlReportParser implements CoverageParser {
 
       String canonicalPath;
       try {
-        canonicalPath = new File(path).getCanonicalPath();
+        canonicalPath = CanonicalPathCache.canonicalPath(path);
       } catch (IOException e) {
         LOG.debug("Skipping the import of Visual Studio XML code coverage for the invalid file path: " + path
           + " at line " + xmlParserHelper.stream().getLocation().getLineNumber(), e);
         return;
       }
 
-      for (Integer line : coveredLines.get(id)) {
-        coverage.addHits(canonicalPath, line, 1);
+      addHits(canonicalPath, coveredLines, id, 1);
+      addHits(canonicalPath, uncoveredLines, id, 0);
+    }
+
+    private void addHits(String path, Map<Integer, SourceLines> linesBySource, int source, int hits) {
+      SourceLines lines = linesBySource.get(source);
+      if (lines != null) {
+        for (int line = lines.denseLines.nextSetBit(0); line >= 0; line = lines.denseLines.nextSetBit(line + 1)) {
+          coverage.addHits(path, line, hits);
+        }
+        for (int line : lines.sparseLines) {
+          coverage.addHits(path, line, hits);
+        }
       }
+    }
 
-      for (Integer line : uncoveredLines.get(id)) {
-        coverage.addHits(canonicalPath, line, 0);
+    private static SourceLines sourceLines(Map<Integer, SourceLines> linesBySource, int source) {
+      SourceLines lines = linesBySource.get(source);
+      if (lines == null) {
+        lines = new SourceLines();
+        linesBySource.put(source, lines);
       }
+      return lines;
     }
 
     private void checkRootTag() {
@@ -123,4 +167,20 @@ public class VisualStudioCoverageXmlReportParser implements CoverageParser {
 
   }
 
+  private static class SourceLines {
+
+    private final BitSet denseLines = new BitSet();
+    private final Set<Integer> sparseLines = Sets.newHashSet();
+
+    public void add(int startLine, int endLine) {
+      if (startLine < LineHits.MAX_DENSE_LINE) {
+        denseLines.set(startLine, Math.min(endLine, LineHits.MAX_DENSE_LINE - 1) + 1);
+      }
+      for (long line = Math.max(startLine, LineHits.MAX_DENSE_LINE); line <= endLine; line++) {
+        sparseLines.add((int) line);
+      }
+    }
+
+  }
+
 }
@@ -66,6 +66,11 @@ public class VisualStudioTestResultsFileParser implements UnitTestResultsParser
       while ((tagName = xmlParserHelper.nextTag()) != null) {
         if ("Counters".equals(tagName)) {
           handleCountersTag();
+        } else if ("UnitTestResult".equals(tagName)) {
+          handleUnitTestResultTag();
+        } else if ("InnerResults".equals(tagName)) {
+          // The results of the rows of a data-driven test are already summed up by its own result
+          xmlParserHelper.skipElement();
         }
       }
     }
@@ -88,6 +93,40 @@ public class VisualStudioTestResultsFileParser implements UnitTestResultsParser
       unitTestResults.add(tests, passed, skipped, failures, errors);
     }
 
+    private void handleUnitTestResultTag() {
+      String testName = xmlParserHelper.getRequiredAttribute("testName");
+      String outcome = xmlParserHelper.getRequiredAttribute("outcome");
+      String duration = xmlParserHelper.getAttribute("duration");
+
+      unitTestResults.addTestCase(testName, outcome(outcome), duration == null ? 0 : durationMillis(duration));
+    }
+
+    private static UnitTestResults.Outcome outcome(String outcome) {
+      if ("Passed".equals(outcome)) {
+        return UnitTestResults.Outcome.PASSED;
+      } else if ("Failed".equals(outcome) || "Timeout".equals(outcome) || "Aborted".equals(outcome)) {
+        return UnitTestResults.Outcome.FAILED;
+      } else if ("Error".equals(outcome)) {
+        return UnitTestResults.Outcome.ERROR;
+      }
+      return UnitTestResults.Outcome.SKIPPED;
+    }
+
+    /**
+     * Parses a duration such as "00:01:02.5000000", in hours, minutes, and seconds with a fractional part.
+     */
+    private long durationMillis(String duration) {
+      String[] parts = duration.split(":", -1);
+      try {
+        if (parts.length == 3) {
+          return (Long.parseLong(parts[0]) * 3600 + Long.parseLong(parts[1]) * 60) * 1000 + Math.round(Double.parseDouble(parts[2]) * 1000);
+        }
+      } catch (NumberFormatException e) {
+        // Reported below
+      }
+      throw xmlParserHelper.parseError("Expected a duration instead of \"" + duration + "\" for the attribute \"duration\"");
+    }
+
     private void checkRootTag() {
       xmlParserHelper.checkRootTag("TestRun");
     }
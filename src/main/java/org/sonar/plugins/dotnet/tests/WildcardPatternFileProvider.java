@@ -19,15 +19,29 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.base.CharMatcher;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.sonar.api.utils.WildcardPattern;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 
 public class WildcardPatternFileProvider {
 
@@ -38,6 +52,8 @@ public class WildcardPatternFileProvider {
   public static final String ZERO_OR_MORE_PATTERN = "*";
   public static final String ANY_PATTERN = "?";
 
+  private static final Splitter SEPARATORS_SPLITTER = Splitter.on(CharMatcher.anyOf("/\\")).omitEmptyStrings();
+
   private final File baseDir;
   private final String directorySeparator;
 
@@ -47,32 +63,147 @@ public class WildcardPatternFileProvider {
   }
 
   public Set<File> listFiles(String pattern) {
-    List<String> elements = ImmutableList.copyOf(Splitter.on(directorySeparator).split(pattern));
+    return listFiles(ImmutableList.of(pattern)).get(pattern);
+  }
+
+  /**
+   * Resolves all the given patterns, walking each distinct directory before the first wildcard only once.
+   * A pattern can select entries of zip archives, such as "reports/*.zip!/**&#47;*.trx": the part before
+   * {@link ReportStreams#ARCHIVE_ENTRY_SEPARATOR} selects the archives, and the part after it their entries.
+   * Only the regular files selected by the part before the separator are archives: such a pattern also selects the ordinary
+   * files whose path contains the separator, such as "build!/results.trx" within a "build!" directory.
+   *
+   * @return the matching files of each pattern, in the order of the given patterns
+   */
+  public Map<String, Set<File>> listFiles(Collection<String> patterns) {
+    Map<String, String> archivePatterns = Maps.newHashMap();
+    Map<String, String> entryPatterns = Maps.newHashMap();
+    Set<String> filePatterns = Sets.newLinkedHashSet();
+    for (String pattern : patterns) {
+      int index = archiveSeparatorIndex(pattern);
+      if (index == -1) {
+        filePatterns.add(pattern);
+      } else {
+        archivePatterns.put(pattern, pattern.substring(0, index));
+        entryPatterns.put(pattern, pattern.substring(index + 2));
+        filePatterns.add(pattern.substring(0, index));
+        filePatterns.add(pattern);
+      }
+    }
 
-    List<String> elementsTillFirstWildcard = elementsTillFirstWildcard(elements);
-    String pathTillFirstWildcardElement = toPath(elementsTillFirstWildcard);
-    File fileTillFirstWildcardElement = new File(pathTillFirstWildcardElement);
+    Map<String, Set<File>> files = resolve(filePatterns);
 
-    File absoluteFileTillFirstWildcardElement = fileTillFirstWildcardElement.isAbsolute() ? fileTillFirstWildcardElement : new File(baseDir, pathTillFirstWildcardElement);
+    ImmutableMap.Builder<String, Set<File>> builder = ImmutableMap.builder();
+    Set<String> seen = Sets.newHashSet();
+    for (String pattern : patterns) {
+      if (!seen.add(pattern)) {
+        continue;
+      }
+      String archivePattern = archivePatterns.get(pattern);
+      if (archivePattern == null) {
+        builder.put(pattern, files.get(pattern));
+      } else {
+        builder.put(pattern, ImmutableSet.<File>builder()
+          .addAll(files.get(pattern))
+          .addAll(listArchiveEntries(files.get(archivePattern), entryPatterns.get(pattern)))
+          .build());
+      }
+    }
+    return builder.build();
+  }
 
-    List<String> wildcardElements = elements.subList(elementsTillFirstWildcard.size(), elements.size());
-    if (wildcardElements.isEmpty()) {
-      return absoluteFileTillFirstWildcardElement.exists() ? ImmutableSet.of(absoluteFileTillFirstWildcardElement) : ImmutableSet.<File>of();
+  private int archiveSeparatorIndex(String pattern) {
+    int index = pattern.indexOf(ReportStreams.ARCHIVE_ENTRY_SEPARATOR);
+    if (directorySeparator.length() == 1) {
+      int separatorIndex = pattern.indexOf("!" + directorySeparator);
+      if (index == -1 || separatorIndex != -1 && separatorIndex < index) {
+        index = separatorIndex;
+      }
     }
-    checkNoCurrentOrParentFolderAccess(wildcardElements);
+    return index;
+  }
 
-    WildcardPattern wildcardPattern = WildcardPattern.create(toPath(wildcardElements), directorySeparator);
+  private Set<File> listArchiveEntries(Set<File> archives, String entryPattern) {
+    checkNoCurrentOrParentFolderAccess(ImmutableList.copyOf(SEPARATORS_SPLITTER.split(entryPattern)));
+    WildcardPattern wildcardPattern = WildcardPattern.create(entryPattern, "/");
 
     ImmutableSet.Builder<File> builder = ImmutableSet.builder();
-    for (File file : listFiles(absoluteFileTillFirstWildcardElement)) {
-      String relativePath = relativize(absoluteFileTillFirstWildcardElement, file);
+    for (File archive : archives) {
+      if (!archive.isFile()) {
+        continue;
+      }
+      try {
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+          for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && wildcardPattern.match(entry.getName())) {
+              builder.add(ReportStreams.archiveEntry(archive, entry.getName()));
+            }
+          }
+        } finally {
+          zipFile.close();
+        }
+      } catch (ZipException e) {
+        // Not a zip archive, so it has no entry to select
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Cannot list the entries of the zip archive " + archive.getAbsolutePath(), e);
+      }
+    }
+    return builder.build();
+  }
 
-      if (wildcardPattern.match(relativePath)) {
-        builder.add(file);
+  private Map<String, Set<File>> resolve(Collection<String> patterns) {
+    Map<String, Set<File>> filesByPattern = Maps.newLinkedHashMap();
+    Map<File, List<PatternWalk>> walksByDir = Maps.newLinkedHashMap();
+
+    for (String pattern : patterns) {
+      if (filesByPattern.containsKey(pattern)) {
+        continue;
       }
+
+      List<String> elements = ImmutableList.copyOf(Splitter.on(directorySeparator).split(pattern));
+
+      List<String> elementsTillFirstWildcard = elementsTillFirstWildcard(elements);
+      String pathTillFirstWildcardElement = toPath(elementsTillFirstWildcard);
+      File fileTillFirstWildcardElement = new File(pathTillFirstWildcardElement);
+
+      File absoluteFileTillFirstWildcardElement = fileTillFirstWildcardElement.isAbsolute() ? fileTillFirstWildcardElement : new File(baseDir, pathTillFirstWildcardElement);
+
+      List<String> wildcardElements = elements.subList(elementsTillFirstWildcard.size(), elements.size());
+      if (wildcardElements.isEmpty()) {
+        filesByPattern.put(pattern, ReportStreams.exists(absoluteFileTillFirstWildcardElement) ?
+          ImmutableSet.of(absoluteFileTillFirstWildcardElement) : ImmutableSet.<File>of());
+        continue;
+      }
+      checkNoCurrentOrParentFolderAccess(wildcardElements);
+
+      String wildcardPath = toPath(wildcardElements);
+      PatternWalk walk = new PatternWalk(new SegmentPattern(SEPARATORS_SPLITTER.split(wildcardPath)), WildcardPattern.create(wildcardPath, directorySeparator));
+      filesByPattern.put(pattern, walk.files);
+
+      List<PatternWalk> walks = walksByDir.get(absoluteFileTillFirstWildcardElement);
+      if (walks == null) {
+        walks = Lists.newArrayList();
+        walksByDir.put(absoluteFileTillFirstWildcardElement, walks);
+      }
+      walks.add(walk);
     }
 
-    return builder.build();
+    for (Map.Entry<File, List<PatternWalk>> entry : walksByDir.entrySet()) {
+      List<PatternWalk> walks = entry.getValue();
+      BitSet[] states = new BitSet[walks.size()];
+      for (int i = 0; i < states.length; i++) {
+        states[i] = walks.get(i).segmentPattern.start();
+      }
+      walk(entry.getKey(), entry.getKey().getAbsolutePath().length() + 1, walks, states);
+    }
+
+    Map<String, Set<File>> result = Maps.newHashMap();
+    for (Map.Entry<String, Set<File>> entry : filesByPattern.entrySet()) {
+      result.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+    }
+    return result;
   }
 
   private String toPath(List<String> elements) {
@@ -109,27 +240,152 @@ public class WildcardPatternFileProvider {
       PARENT_FOLDER.equals(element);
   }
 
-  private static Set<File> listFiles(File dir) {
-    ImmutableSet.Builder<File> builder = ImmutableSet.builder();
-    listFiles(builder, dir);
-    return builder.build();
-  }
-
-  private static void listFiles(ImmutableSet.Builder<File> builder, File dir) {
+  /**
+   * Descends into the directories which can still lead to a match of at least one pattern only, and never deeper than the patterns allow.
+   * A null state means that the pattern can no longer match below the current directory.
+   * The candidate files are then matched on their whole path relative to the walked directory, as they always were.
+   */
+  private static void walk(File dir, int relativePathStart, List<PatternWalk> walks, BitSet[] states) {
     File[] files = dir.listFiles();
-    if (files != null) {
-      builder.add(files);
+    if (files == null) {
+      return;
+    }
 
-      for (File file : files) {
-        if (file.isDirectory()) {
-          listFiles(builder, file);
+    for (File file : files) {
+      BitSet[] nextStates = new BitSet[states.length];
+      boolean canDescend = false;
+
+      for (int i = 0; i < states.length; i++) {
+        if (states[i] == null) {
+          continue;
+        }
+
+        PatternWalk walk = walks.get(i);
+        SegmentPattern segmentPattern = walk.segmentPattern;
+        BitSet next = segmentPattern.next(states[i], file.getName());
+        if (segmentPattern.mayMatch(next) && walk.wildcardPattern.match(file.getAbsolutePath().substring(relativePathStart))) {
+          walk.files.add(file);
+        }
+        if (segmentPattern.canDescend(next)) {
+          nextStates[i] = next;
+          canDescend = true;
         }
       }
+
+      if (canDescend && file.isDirectory()) {
+        walk(file, relativePathStart, walks, nextStates);
+      }
+    }
+  }
+
+  private static class PatternWalk {
+
+    private final SegmentPattern segmentPattern;
+    private final WildcardPattern wildcardPattern;
+    private final Set<File> files = Sets.newLinkedHashSet();
+
+    public PatternWalk(SegmentPattern segmentPattern, WildcardPattern wildcardPattern) {
+      this.segmentPattern = segmentPattern;
+      this.wildcardPattern = wildcardPattern;
     }
+
   }
 
-  private static String relativize(File parent, File file) {
-    return file.getAbsolutePath().substring(parent.getAbsolutePath().length() + 1);
+  /**
+   * Prunes the walk by matching the path elements after the first wildcard one directory level at a time.
+   * State i means that the first i elements have been matched, "**" elements match zero or more directories.
+   * An element such as "**.trx" can span any number of directories, so the pattern stays open below it.
+   */
+  private static class SegmentPattern {
+
+    private final int size;
+    private final boolean[] recursive;
+    private final boolean[] open;
+    private final Pattern[] patterns;
+
+    public SegmentPattern(Iterable<String> elements) {
+      List<String> list = ImmutableList.copyOf(elements);
+      size = list.size();
+      recursive = new boolean[size];
+      open = new boolean[size];
+      patterns = new Pattern[size];
+      for (int i = 0; i < size; i++) {
+        String element = list.get(i);
+        if (RECURSIVE_PATTERN.equals(element)) {
+          recursive[i] = true;
+        } else if (element.contains(RECURSIVE_PATTERN)) {
+          open[i] = true;
+        } else {
+          patterns[i] = Pattern.compile(toRegexp(element));
+        }
+      }
+    }
+
+    public BitSet start() {
+      BitSet states = new BitSet(size + 1);
+      states.set(0);
+      return closure(states);
+    }
+
+    public BitSet next(BitSet states, String name) {
+      BitSet result = new BitSet(size + 1);
+      for (int i = states.nextSetBit(0); i >= 0 && i < size; i = states.nextSetBit(i + 1)) {
+        if (recursive[i] || open[i]) {
+          result.set(i);
+        } else if (patterns[i].matcher(name).matches()) {
+          result.set(i + 1);
+        }
+      }
+      return closure(result);
+    }
+
+    public boolean mayMatch(BitSet states) {
+      if (states.get(size)) {
+        return true;
+      }
+      for (int i = states.nextSetBit(0); i >= 0 && i < size; i = states.nextSetBit(i + 1)) {
+        if (open[i]) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public boolean canDescend(BitSet states) {
+      int first = states.nextSetBit(0);
+      return first >= 0 && first < size;
+    }
+
+    private BitSet closure(BitSet states) {
+      for (int i = 0; i < size; i++) {
+        if (recursive[i] && states.get(i)) {
+          states.set(i + 1);
+        }
+      }
+      return states;
+    }
+
+    private static String toRegexp(String element) {
+      StringBuilder sb = new StringBuilder();
+      StringBuilder literal = new StringBuilder();
+      for (int i = 0; i < element.length(); i++) {
+        char c = element.charAt(i);
+        if (c == '*' || c == '?') {
+          if (literal.length() > 0) {
+            sb.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+          }
+          sb.append(c == '*' ? ".*" : ".");
+        } else {
+          literal.append(c);
+        }
+      }
+      if (literal.length() > 0) {
+        sb.append(Pattern.quote(literal.toString()));
+      }
+      return sb.toString();
+    }
+
   }
 
 }
@@ -22,6 +22,9 @@ package org.sonar.plugins.dotnet.tests;
 import com.google.common.base.Charsets;
 import com.google.common.base.Throwables;
 import com.google.common.io.Closeables;
+import com.google.common.io.CountingInputStream;
+import org.codehaus.stax2.typed.TypedXMLStreamException;
+import org.codehaus.stax2.typed.TypedXMLStreamReader;
 import org.sonar.api.utils.SonarException;
 
 import javax.annotation.Nullable;
@@ -31,30 +34,45 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
+import java.io.IOException;
 
 public class XmlParserHelper {
 
+  /**
+   * Looking up and configuring a factory is much more expensive than creating a stream reader from it,
+   * so a single factory is shared: creating readers from a configured factory is thread-safe.
+   */
+  private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
   private final File file;
-  private final InputStreamReader reader;
+  private final CountingInputStream in;
   private final XMLStreamReader stream;
+  @Nullable
+  private final TypedXMLStreamReader typedStream;
+  private long elements;
 
   public XmlParserHelper(File file) {
     try {
       this.file = file;
-      this.reader = new InputStreamReader(new FileInputStream(file), Charsets.UTF_8);
-      XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
-      this.stream = xmlFactory.createXMLStreamReader(reader);
+      this.in = new CountingInputStream(ReportStreams.open(file));
+      // The stream reader buffers its input itself
+      this.stream = XML_INPUT_FACTORY.createXMLStreamReader(in, Charsets.UTF_8.name());
+      this.typedStream = stream instanceof TypedXMLStreamReader ? (TypedXMLStreamReader) stream : null;
 
-    } catch (FileNotFoundException e) {
+    } catch (IOException e) {
       throw Throwables.propagate(e);
     } catch (XMLStreamException e) {
       throw Throwables.propagate(e);
     }
   }
 
+  private static XMLInputFactory createXmlInputFactory() {
+    XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
+    xmlFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return xmlFactory;
+  }
+
   public void checkRootTag(String name) {
     String rootTag = nextTag();
 
@@ -68,6 +86,7 @@ public class XmlParserHelper {
     try {
       while (stream.hasNext()) {
         if (stream.next() == XMLStreamConstants.START_ELEMENT) {
+          elements++;
           return stream.getLocalName();
         }
       }
@@ -78,6 +97,26 @@ public class XmlParserHelper {
     }
   }
 
+  /**
+   * Skips the content of the current element, up to and including its end tag.
+   */
+  public void skipElement() {
+    try {
+      int depth = 1;
+      while (depth > 0 && stream.hasNext()) {
+        int event = stream.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          elements++;
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new SonarException("Error while parsing the XML file: " + file.getAbsolutePath(), e);
+    }
+  }
+
   public void checkRequiredAttribute(String name, int expectedValue) {
     int actualValue = getRequiredIntAttribute(name);
     if (expectedValue != actualValue) {
@@ -86,8 +125,29 @@ public class XmlParserHelper {
   }
 
   public int getRequiredIntAttribute(String name) {
-    String value = getRequiredAttribute(name);
+    return getRequiredIntAttribute(requiredAttributeIndex(name), name);
+  }
+
+  public int getRequiredIntAttribute(Attribute attribute) {
+    return getRequiredIntAttribute(requiredAttributeIndex(attribute), attribute.name);
+  }
+
+  /**
+   * Stax2 readers, such as the Woodstox one provided by SonarQube, decode the integer straight from their character buffer,
+   * while other readers go through the attribute value String.
+   */
+  private int getRequiredIntAttribute(int index, String name) {
+    if (typedStream != null) {
+      try {
+        return typedStream.getAttributeAsInt(index);
+      } catch (TypedXMLStreamException e) {
+        throw parseError("Expected an integer instead of \"" + e.getLexical() + "\" for the attribute \"" + name + "\"");
+      } catch (XMLStreamException e) {
+        throw new SonarException("Error while parsing the XML file: " + file.getAbsolutePath(), e);
+      }
+    }
 
+    String value = stream.getAttributeValue(index);
     try {
       return Integer.parseInt(value);
     } catch (NumberFormatException e) {
@@ -96,23 +156,61 @@ public class XmlParserHelper {
   }
 
   public String getRequiredAttribute(String name) {
-    String value = getAttribute(name);
-    if (value == null) {
-      throw parseError("Missing attribute \"" + name + "\" in element <" + stream.getLocalName() + ">");
-    }
+    return stream.getAttributeValue(requiredAttributeIndex(name));
+  }
 
-    return value;
+  public String getRequiredAttribute(Attribute attribute) {
+    return stream.getAttributeValue(requiredAttributeIndex(attribute));
   }
 
   @Nullable
   public String getAttribute(String name) {
+    int index = attributeIndex(name);
+    return index == -1 ? null : stream.getAttributeValue(index);
+  }
+
+  @Nullable
+  public String getAttribute(Attribute attribute) {
+    int index = attributeIndex(attribute);
+    return index == -1 ? null : stream.getAttributeValue(index);
+  }
+
+  private int requiredAttributeIndex(String name) {
+    return checkFound(attributeIndex(name), name);
+  }
+
+  private int requiredAttributeIndex(Attribute attribute) {
+    return checkFound(attributeIndex(attribute), attribute.name);
+  }
+
+  private int checkFound(int index, String name) {
+    if (index == -1) {
+      throw parseError("Missing attribute \"" + name + "\" in element <" + stream.getLocalName() + ">");
+    }
+    return index;
+  }
+
+  private int attributeIndex(String name) {
     for (int i = 0; i < stream.getAttributeCount(); i++) {
       if (name.equals(stream.getAttributeLocalName(i))) {
-        return stream.getAttributeValue(i);
+        return i;
       }
     }
 
-    return null;
+    return -1;
+  }
+
+  private int attributeIndex(Attribute attribute) {
+    int index = attribute.index;
+    if (index < stream.getAttributeCount() && attribute.name.equals(stream.getAttributeLocalName(index))) {
+      return index;
+    }
+
+    index = attributeIndex(attribute.name);
+    if (index != -1) {
+      attribute.index = index;
+    }
+    return index;
   }
 
   public ParseErrorException parseError(String message) {
@@ -120,7 +218,8 @@ public class XmlParserHelper {
   }
 
   public void close() {
-    Closeables.closeQuietly(reader);
+    Closeables.closeQuietly(in);
+    ImportMetrics.addRead(in.getCount(), elements);
 
     if (stream != null) {
       try {
@@ -135,4 +234,20 @@ public class XmlParserHelper {
     return stream;
   }
 
+  /**
+   * An attribute of a given element type, whose index is resolved on the first element and reused for the next ones,
+   * as long as they list their attributes in the same order.
+   * A parser keeps one instance per attribute of each of its element types, and must not share it across threads.
+   */
+  public static final class Attribute {
+
+    private final String name;
+    private int index;
+
+    public Attribute(String name) {
+      this.name = name;
+    }
+
+  }
+
 }
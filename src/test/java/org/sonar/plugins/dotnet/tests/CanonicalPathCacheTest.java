@@ -0,0 +1,73 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CanonicalPathCacheTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Before
+  public void init() {
+    CanonicalPathCache.clear();
+  }
+
+  @Test
+  public void canonical_paths_are_memoized_and_interned() throws Exception {
+    File foo = tmp.newFile("foo.cs");
+    String path = new File(tmp.getRoot(), "foo.cs").getAbsolutePath();
+    String otherPath = new File(tmp.getRoot(), "." + File.separator + "foo.cs").getAbsolutePath();
+
+    String canonicalPath = CanonicalPathCache.canonicalPath(path);
+    assertThat(canonicalPath).isEqualTo(foo.getCanonicalPath());
+    assertThat(CanonicalPathCache.canonicalPath(new String(path))).isSameAs(canonicalPath);
+    assertThat(CanonicalPathCache.canonicalPath(otherPath)).isSameAs(canonicalPath);
+
+    assertThat(CanonicalPathCache.statistics()).isEqualTo("Canonical path cache: 1 hits, 2 misses (33% hit rate), 2 entries");
+  }
+
+  @Test
+  public void clear() throws Exception {
+    tmp.newFile("foo.cs");
+    String path = new File(tmp.getRoot(), "foo.cs").getAbsolutePath();
+    String canonicalPath = CanonicalPathCache.canonicalPath(path);
+    assertThat(CanonicalPathCache.intern(new String(canonicalPath))).isSameAs(canonicalPath);
+
+    CanonicalPathCache.clear();
+    assertThat(CanonicalPathCache.statistics()).isEqualTo("Canonical path cache: 0 hits, 0 misses (0% hit rate), 0 entries");
+    String otherCanonicalPath = new String(canonicalPath);
+    assertThat(CanonicalPathCache.intern(otherCanonicalPath)).isSameAs(otherCanonicalPath);
+  }
+
+  @Test
+  public void empty_statistics() {
+    assertThat(CanonicalPathCache.statistics()).isEqualTo("Canonical path cache: 0 hits, 0 misses (0% hit rate), 0 entries");
+  }
+
+}
@@ -23,10 +23,14 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 import org.sonar.api.config.Settings;
 
@@ -34,18 +38,24 @@ import java.io.File;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.never;
+import static org.sonar.plugins.dotnet.tests.MockFileProviders.mockFileProvider;
+import static org.sonar.plugins.dotnet.tests.MockFileProviders.stubBatchListFiles;
 
 public class CoverageAggregatorTest {
 
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void hasCoverageProperty() {
     Settings settings = mock(Settings.class);
@@ -92,7 +102,7 @@ public class CoverageAggregatorTest {
 
   @Test
   public void aggregate() {
-    WildcardPatternFileProvider wildcardPatternFileProvider = mock(WildcardPatternFileProvider.class);
+    WildcardPatternFileProvider wildcardPatternFileProvider = mockFileProvider();
 
     CoverageConfiguration coverageConf = new CoverageConfiguration("", "", "ncover", "opencover", "dotcover", "visualstudio");
     Settings settings = mock(Settings.class);
@@ -170,6 +180,7 @@ public class CoverageAggregatorTest {
     verify(visualStudioCoverageXmlReportParser).parse(new File("qux.coveragexml"), coverage);
 
     Mockito.reset(wildcardPatternFileProvider);
+    stubBatchListFiles(wildcardPatternFileProvider);
 
     when(settings.hasKey("ncover")).thenReturn(true);
     when(settings.getString("ncover")).thenReturn(",*.nccov  ,bar.nccov");
@@ -193,11 +204,7 @@ public class CoverageAggregatorTest {
     new CoverageAggregator(coverageConf, settings, ncoverParser, openCoverParser, dotCoverParser, visualStudioCoverageXmlReportParser)
       .aggregate(wildcardPatternFileProvider, coverage);
 
-    verify(wildcardPatternFileProvider).listFiles("*.nccov");
-    verify(wildcardPatternFileProvider).listFiles("bar.nccov");
-    verify(wildcardPatternFileProvider).listFiles("bar.xml");
-    verify(wildcardPatternFileProvider).listFiles("baz.html");
-    verify(wildcardPatternFileProvider).listFiles("qux.coveragexml");
+    verify(wildcardPatternFileProvider).listFiles(ImmutableList.of("*.nccov", "bar.nccov", "bar.xml", "baz.html", "qux.coveragexml"));
 
     verify(ncoverParser).parse(new File("foo.nccov"), coverage);
     verify(ncoverParser).parse(new File("bar.nccov"), coverage);
@@ -209,7 +216,7 @@ public class CoverageAggregatorTest {
   @Test
   public void aggregateWithCache() {
     CoverageParserCache.clear();
-    WildcardPatternFileProvider wildcardPatternFileProvider = mock(WildcardPatternFileProvider.class);
+    WildcardPatternFileProvider wildcardPatternFileProvider = mockFileProvider();
 
     CoverageConfiguration coverageConf = new CoverageConfiguration("", "", "ncover", "opencover", "dotcover", "visualstudio");
     Settings settings = mock(Settings.class);
@@ -302,7 +309,7 @@ public class CoverageAggregatorTest {
   @Test
   public void cachedCoverageIsCorrectlyAggregated() {
     CoverageParserCache.clear();
-    WildcardPatternFileProvider wildcardPatternFileProvider = mock(WildcardPatternFileProvider.class);
+    WildcardPatternFileProvider wildcardPatternFileProvider = mockFileProvider();
 
     CoverageConfiguration coverageConf = new CoverageConfiguration("", "", "ncover", "opencover", "dotcover", "visualstudio");
     Settings settings = mock(Settings.class);
@@ -346,5 +353,272 @@ public class CoverageAggregatorTest {
     assertThat(coverage.hits("B").get(1)).isEqualTo(4);
   }
 
+  @Test
+  public void aggregateWithPersistentCache() throws Exception {
+    CoverageParserCache.clear();
+    WildcardPatternFileProvider wildcardPatternFileProvider = mockFileProvider();
+    File report = tmp.newFile("bar.xml");
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "", "ncover", "opencover", "dotcover", "visualstudio");
+    Settings settings = mock(Settings.class);
+
+    when(settings.hasKey("sonar.working.directory")).thenReturn(true);
+    when(settings.getString("sonar.working.directory")).thenReturn(tmp.getRoot().getAbsolutePath());
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("bar.xml");
+    when(settings.getBoolean("opencover.useCache")).thenReturn(true);
+    when(settings.getBoolean("opencover.persistentCache")).thenReturn(true);
+    when(wildcardPatternFileProvider.listFiles("bar.xml")).thenReturn(ImmutableSet.of(report));
+
+    OpenCoverReportParser openCoverParser = mock(OpenCoverReportParser.class);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        Coverage coverage = (Coverage) invocation.getArguments()[1];
+        coverage.addHits("A", 1, 1);
+        coverage.addHits("A", 2, 0);
+        return null;
+      } }).when(openCoverParser).parse(eq(report), any(Coverage.class));
+
+    new CoverageAggregator(coverageConf, settings, mock(NCover3ReportParser.class), openCoverParser, mock(DotCoverReportsAggregator.class),
+      mock(VisualStudioCoverageXmlReportParser.class))
+      .aggregate(wildcardPatternFileProvider, new Coverage());
+    verify(openCoverParser).parse(eq(report), any(Coverage.class));
+    assertThat(new File(tmp.getRoot(), "dotnet-coverage-cache").list()).hasSize(2);
+
+    CoverageParserCache.clear();
+    openCoverParser = mock(OpenCoverReportParser.class);
+    Coverage coverage = new Coverage();
+    new CoverageAggregator(coverageConf, settings, mock(NCover3ReportParser.class), openCoverParser, mock(DotCoverReportsAggregator.class),
+      mock(VisualStudioCoverageXmlReportParser.class))
+      .aggregate(wildcardPatternFileProvider, coverage);
+    verify(openCoverParser, never()).parse(any(File.class), any(Coverage.class));
+    assertThat(coverage.hits("A").get(1)).isEqualTo(1);
+    assertThat(coverage.hits("A").get(2)).isEqualTo(0);
+  }
+
+  @Test
+  public void aggregateLazilyWithoutTheCaches() throws Exception {
+    CoverageParserCache.clear();
+    WildcardPatternFileProvider wildcardPatternFileProvider = mockFileProvider();
+    File report = tmp.newFile("bar.xml");
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "", "ncover", "opencover", "dotcover", "visualstudio");
+    Settings settings = mock(Settings.class);
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("bar.xml");
+    when(settings.getBoolean("opencover.useCache")).thenReturn(true);
+    when(wildcardPatternFileProvider.listFiles("bar.xml")).thenReturn(ImmutableSet.of(report));
+
+    OpenCoverReportParser openCoverParser = mock(OpenCoverReportParser.class);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        Coverage coverage = (Coverage) invocation.getArguments()[1];
+        coverage.addHits("A", 1, 1);
+        coverage.addHits("B", 2, 0);
+        return null;
+      } }).when(openCoverParser).parse(eq(report), any(Coverage.class));
+    CoverageAggregator coverageAggregator = new CoverageAggregator(coverageConf, settings, mock(NCover3ReportParser.class), openCoverParser,
+      mock(DotCoverReportsAggregator.class), mock(VisualStudioCoverageXmlReportParser.class));
+
+    ImportMetrics firstModuleMetrics = new ImportMetrics("Coverage").start();
+    LazyCoverage coverage;
+    try {
+      coverage = coverageAggregator.aggregateLazily(wildcardPatternFileProvider);
+    } finally {
+      firstModuleMetrics.stop();
+    }
+
+    ImportMetrics secondModuleMetrics = new ImportMetrics("Coverage").start();
+    try {
+      assertThat(coverageAggregator.aggregateLazily(wildcardPatternFileProvider).files()).containsOnly("A", "B");
+      assertThat(coverage.hits("B").get(2)).isEqualTo(0);
+    } finally {
+      secondModuleMetrics.stop();
+    }
+
+    verify(openCoverParser, times(3)).parse(eq(report), any(Coverage.class));
+    assertThat(CoverageParserCache.statistics()).contains("0 entries holding 0 cells");
+    assertThat(firstModuleMetrics.reports()).hasSize(1);
+    assertThat(secondModuleMetrics.reports()).hasSize(2);
+  }
+
+  @Test
+  public void aggregateIncrementally() throws Exception {
+    CoverageParserCache.clear();
+    WildcardPatternFileProvider wildcardPatternFileProvider = mockFileProvider();
+    File a = tmp.newFile("a.xml");
+    File b = tmp.newFile("b.xml");
+    File c = tmp.newFile("c.xml");
+    File cacheDirectory = new File(tmp.getRoot(), "dotnet-coverage-cache");
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "", "ncover", "opencover", "dotcover", "visualstudio");
+    Settings settings = mock(Settings.class);
+
+    when(settings.hasKey("sonar.working.directory")).thenReturn(true);
+    when(settings.getString("sonar.working.directory")).thenReturn(tmp.getRoot().getAbsolutePath());
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("*.xml");
+    when(settings.getBoolean("opencover.useCache")).thenReturn(true);
+    when(settings.getBoolean("opencover.persistentCache")).thenReturn(true);
+    when(wildcardPatternFileProvider.listFiles("*.xml")).thenReturn(ImmutableSet.of(a, b));
+
+    OpenCoverReportParser openCoverParser = mockReportNameParser();
+    new CoverageAggregator(coverageConf, settings, mock(NCover3ReportParser.class), openCoverParser, mock(DotCoverReportsAggregator.class),
+      mock(VisualStudioCoverageXmlReportParser.class))
+      .aggregate(wildcardPatternFileProvider, new Coverage());
+    verify(openCoverParser).parse(eq(a), any(Coverage.class));
+    verify(openCoverParser).parse(eq(b), any(Coverage.class));
+    assertThat(cacheDirectory.list()).hasSize(3);
+
+    CoverageParserCache.clear();
+    Files.write("changed", a, Charsets.UTF_8);
+    when(wildcardPatternFileProvider.listFiles("*.xml")).thenReturn(ImmutableSet.of(a, c));
+    openCoverParser = mockReportNameParser();
+    Coverage coverage = new Coverage();
+    new CoverageAggregator(coverageConf, settings, mock(NCover3ReportParser.class), openCoverParser, mock(DotCoverReportsAggregator.class),
+      mock(VisualStudioCoverageXmlReportParser.class))
+      .aggregate(wildcardPatternFileProvider, coverage);
+    verify(openCoverParser).parse(eq(a), any(Coverage.class));
+    verify(openCoverParser, never()).parse(eq(b), any(Coverage.class));
+    verify(openCoverParser).parse(eq(c), any(Coverage.class));
+    assertThat(coverage.files()).containsOnly("a.xml", "c.xml");
+    assertThat(cacheDirectory.list()).hasSize(3);
+    assertThat(new File(cacheDirectory, ReportFingerprint.pathHash(b.getAbsolutePath()) + ".bin").exists()).isFalse();
+
+    CoverageParserCache.clear();
+    openCoverParser = mockReportNameParser();
+    coverage = new Coverage();
+    new CoverageAggregator(coverageConf, settings, mock(NCover3ReportParser.class), openCoverParser, mock(DotCoverReportsAggregator.class),
+      mock(VisualStudioCoverageXmlReportParser.class))
+      .aggregate(wildcardPatternFileProvider, coverage);
+    verify(openCoverParser, never()).parse(any(File.class), any(Coverage.class));
+    assertThat(coverage.files()).containsOnly("a.xml", "c.xml");
+  }
+
+  @Test
+  public void aggregateIncrementallyKeepsTheReportsOfOtherModules() throws Exception {
+    CoverageParserCache.clear();
+    WildcardPatternFileProvider wildcardPatternFileProvider = mockFileProvider();
+    File a = tmp.newFile("a.xml");
+    File b = tmp.newFile("b.xml");
+    File cacheDirectory = new File(tmp.getRoot(), "dotnet-coverage-cache");
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "", "ncover", "opencover", "dotcover", "visualstudio");
+    Settings settings = mock(Settings.class);
+
+    when(settings.hasKey("sonar.working.directory")).thenReturn(true);
+    when(settings.getString("sonar.working.directory")).thenReturn(tmp.getRoot().getAbsolutePath());
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("*.xml");
+    when(settings.getBoolean("opencover.useCache")).thenReturn(true);
+    when(settings.getBoolean("opencover.persistentCache")).thenReturn(true);
+    when(wildcardPatternFileProvider.listFiles("*.xml")).thenReturn(ImmutableSet.of(a, b));
+
+    new CoverageAggregator(coverageConf, settings, mock(NCover3ReportParser.class), mockReportNameParser(), mock(DotCoverReportsAggregator.class),
+      mock(VisualStudioCoverageXmlReportParser.class))
+      .aggregate(wildcardPatternFileProvider, new Coverage());
+    CoverageManifest.read(CoverageManifest.file(cacheDirectory, "other module")).write(ImmutableList.of(ReportFingerprint.of(b, false)));
+
+    CoverageParserCache.clear();
+    when(wildcardPatternFileProvider.listFiles("*.xml")).thenReturn(ImmutableSet.of(a));
+    new CoverageAggregator(coverageConf, settings, mock(NCover3ReportParser.class), mockReportNameParser(), mock(DotCoverReportsAggregator.class),
+      mock(VisualStudioCoverageXmlReportParser.class))
+      .aggregate(wildcardPatternFileProvider, new Coverage());
+    assertThat(new File(cacheDirectory, ReportFingerprint.pathHash(b.getAbsolutePath()) + ".bin").exists()).isTrue();
+  }
+
+  private static OpenCoverReportParser mockReportNameParser() {
+    OpenCoverReportParser parser = mock(OpenCoverReportParser.class);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        File report = (File) invocation.getArguments()[0];
+        Coverage coverage = (Coverage) invocation.getArguments()[1];
+        coverage.addHits(report.getName(), 1, 1);
+        return null;
+      } }).when(parser).parse(any(File.class), any(Coverage.class));
+    return parser;
+  }
+
+  @Test
+  public void aggregateInParallel() {
+    WildcardPatternFileProvider wildcardPatternFileProvider = mockFileProvider();
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "", "ncover", "opencover", "dotcover", "visualstudio");
+    Settings settings = mock(Settings.class);
+
+    when(settings.hasKey(CoverageAggregator.PARALLELISM_PROPERTY_KEY)).thenReturn(true);
+    when(settings.getInt(CoverageAggregator.PARALLELISM_PROPERTY_KEY)).thenReturn(4);
+    when(settings.hasKey("ncover")).thenReturn(true);
+    when(settings.getString("ncover")).thenReturn("*.nccov");
+    ImmutableSet.Builder<File> ncoverReports = ImmutableSet.builder();
+    for (int i = 0; i < 20; i++) {
+      ncoverReports.add(new File(i + ".nccov"));
+    }
+    when(wildcardPatternFileProvider.listFiles("*.nccov")).thenReturn(ncoverReports.build());
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("bar.xml");
+    when(wildcardPatternFileProvider.listFiles("bar.xml")).thenReturn(ImmutableSet.of(new File("bar.xml")));
+
+    Answer<Void> addHits = new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        int report = ((File) invocation.getArguments()[0]).getName().hashCode() & 0xFF;
+        Coverage coverage = (Coverage) invocation.getArguments()[1];
+        for (int line = 1; line <= 100; line++) {
+          coverage.addHits("A", line, report % line);
+          coverage.addHits(report % 2 == 0 ? "B" : "C", line, 1);
+        }
+        return null;
+      }
+    };
+    NCover3ReportParser ncoverParser = mock(NCover3ReportParser.class);
+    Mockito.doAnswer(addHits).when(ncoverParser).parse(any(File.class), any(Coverage.class));
+    OpenCoverReportParser openCoverParser = mock(OpenCoverReportParser.class);
+    Mockito.doAnswer(addHits).when(openCoverParser).parse(any(File.class), any(Coverage.class));
+
+    Coverage coverage = new Coverage();
+    new CoverageAggregator(coverageConf, settings, ncoverParser, openCoverParser, mock(DotCoverReportsAggregator.class), mock(VisualStudioCoverageXmlReportParser.class))
+      .aggregate(wildcardPatternFileProvider, coverage);
+
+    when(settings.hasKey(CoverageAggregator.PARALLELISM_PROPERTY_KEY)).thenReturn(false);
+    Coverage sequentialCoverage = new Coverage();
+    new CoverageAggregator(coverageConf, settings, ncoverParser, openCoverParser, mock(DotCoverReportsAggregator.class), mock(VisualStudioCoverageXmlReportParser.class))
+      .aggregate(wildcardPatternFileProvider, sequentialCoverage);
+
+    verify(ncoverParser, Mockito.times(2)).parse(eq(new File("0.nccov")), any(Coverage.class));
+    verify(ncoverParser, Mockito.times(2)).parse(eq(new File("19.nccov")), any(Coverage.class));
+    verify(openCoverParser, Mockito.times(2)).parse(eq(new File("bar.xml")), any(Coverage.class));
+    assertThat(coverage.files()).isEqualTo(sequentialCoverage.files());
+    for (String file : sequentialCoverage.files()) {
+      assertThat(coverage.hits(file)).isEqualTo(sequentialCoverage.hits(file));
+    }
+  }
+
+  @Test
+  public void aggregateInParallelWithFailure() {
+    thrown.expect(ParseErrorException.class);
+    thrown.expectMessage("bar.xml");
+
+    WildcardPatternFileProvider wildcardPatternFileProvider = mockFileProvider();
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "", "ncover", "opencover", "dotcover", "visualstudio");
+    Settings settings = mock(Settings.class);
+
+    when(settings.hasKey(CoverageAggregator.PARALLELISM_PROPERTY_KEY)).thenReturn(true);
+    when(settings.getInt(CoverageAggregator.PARALLELISM_PROPERTY_KEY)).thenReturn(2);
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("*.xml");
+    when(wildcardPatternFileProvider.listFiles("*.xml")).thenReturn(ImmutableSet.of(new File("foo.xml"), new File("bar.xml")));
+
+    OpenCoverReportParser openCoverParser = mock(OpenCoverReportParser.class);
+    Mockito.doThrow(new ParseErrorException("bar.xml")).when(openCoverParser).parse(eq(new File("bar.xml")), any(Coverage.class));
+
+    new CoverageAggregator(coverageConf, settings, mock(NCover3ReportParser.class), openCoverParser, mock(DotCoverReportsAggregator.class),
+      mock(VisualStudioCoverageXmlReportParser.class))
+      .aggregate(wildcardPatternFileProvider, new Coverage());
+  }
 
 }
@@ -0,0 +1,58 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CoverageFileIndexTest {
+
+  @Test
+  public void files_under() {
+    String root = File.separator + "root";
+    String foo = path(root, "module", "Foo.cs");
+    String bar = path(root, "module", "sub", "Bar.cs");
+    String upperCase = path(root, "MODULE", "Baz.cs");
+    String sibling = path(root, "module2", "Foo.cs");
+    String other = path(root, "other", "Foo.cs");
+
+    CoverageFileIndex index = new CoverageFileIndex(ImmutableList.of(foo, bar, upperCase, sibling, other));
+
+    assertThat(index.size()).isEqualTo(5);
+    assertThat(index.filesUnder(path(root, "module"))).containsOnly(foo, bar, upperCase);
+    assertThat(index.filesUnder(path(root, "module") + File.separator)).containsOnly(foo, bar, upperCase);
+    assertThat(index.filesUnder(path(root, "module", "sub"))).containsOnly(bar);
+    assertThat(index.filesUnder(root)).containsOnly(foo, bar, upperCase, sibling, other);
+    assertThat(index.filesUnder(path(root, "nonexisting"))).isEmpty();
+  }
+
+  private static String path(String... elements) {
+    StringBuilder sb = new StringBuilder(elements[0]);
+    for (int i = 1; i < elements.length; i++) {
+      sb.append(File.separator).append(elements[i]);
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CoverageManifestTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void compare_with_previous_analysis() throws Exception {
+    File file = CoverageManifest.file(new File(tmp.getRoot(), "cache"), "opencover=*.xml");
+    ReportFingerprint a = new ReportFingerprint("a.xml", 1, 1, null);
+    ReportFingerprint b = new ReportFingerprint("b.xml", 2, 2, "hash");
+    ReportFingerprint c = new ReportFingerprint("c.xml", 3, 3, null);
+
+    CoverageManifest.Changes changes = CoverageManifest.read(file).compare(ImmutableList.of(a, b));
+    assertThat(changes.removed()).isEmpty();
+    assertThat(changes.toString()).isEqualTo("2 new, 0 changed, 0 unchanged and 0 removed reports");
+
+    CoverageManifest.read(file).write(ImmutableList.of(a, b));
+
+    changes = CoverageManifest.read(file).compare(ImmutableList.of(new ReportFingerprint("b.xml", 2, 2, "other"), c));
+    assertThat(changes.removed()).containsExactly("a.xml");
+    assertThat(changes.toString()).isEqualTo("1 new, 1 changed, 0 unchanged and 1 removed reports");
+
+    changes = CoverageManifest.read(file).compare(ImmutableList.of(b, a));
+    assertThat(changes.toString()).isEqualTo("0 new, 0 changed, 2 unchanged and 0 removed reports");
+  }
+
+  @Test
+  public void reports_of_other_manifests() {
+    File directory = new File(tmp.getRoot(), "cache");
+    ReportFingerprint a = new ReportFingerprint("a.xml", 1, 1, null);
+    ReportFingerprint b = new ReportFingerprint("b.xml", 2, 2, null);
+    ReportFingerprint c = new ReportFingerprint("c.xml", 3, 3, null);
+
+    CoverageManifest first = CoverageManifest.read(CoverageManifest.file(directory, "opencover=*.xml"));
+    assertThat(first.reportsOfOtherManifests()).isEmpty();
+
+    first.write(ImmutableList.of(a, b));
+    CoverageManifest.read(CoverageManifest.file(directory, "opencover=b.xml")).write(ImmutableList.of(b));
+    CoverageManifest.read(CoverageManifest.file(directory, "opencover=c.xml")).write(ImmutableList.of(c));
+
+    assertThat(first.reportsOfOtherManifests()).containsOnly("b.xml", "c.xml");
+  }
+
+  @Test
+  public void manifest_per_report_path_patterns() {
+    File directory = tmp.getRoot();
+    assertThat(CoverageManifest.file(directory, "opencover=*.xml")).isEqualTo(CoverageManifest.file(directory, "opencover=*.xml"));
+    assertThat(CoverageManifest.file(directory, "opencover=*.xml")).isNotEqualTo(CoverageManifest.file(directory, "opencover=a.xml"));
+  }
+
+  @Test
+  public void unreadable_manifest() throws Exception {
+    File file = tmp.newFile("manifest.bin");
+    Files.write("foo", file, Charsets.UTF_8);
+
+    CoverageManifest.Changes changes = CoverageManifest.read(file).compare(ImmutableList.of(new ReportFingerprint("a.xml", 1, 1, null)));
+    assertThat(changes.toString()).isEqualTo("1 new, 0 changed, 0 unchanged and 0 removed reports");
+  }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CoverageParserCacheTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final CoverageParser parser = mock(CoverageParser.class);
+
+  @Before
+  public void init() {
+    CoverageParserCache.clear();
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        String name = ((File) invocation.getArguments()[0]).getName();
+        Coverage coverage = (Coverage) invocation.getArguments()[1];
+        coverage.addHits(name, 1, 1);
+        coverage.addHits(name, 2, 0);
+        return null;
+      } }).when(parser).parse(any(File.class), any(Coverage.class));
+  }
+
+  @Test
+  public void hits_and_misses() {
+    CoverageParserCache cache = new CoverageParserCache(parser);
+
+    Coverage coverage = new Coverage();
+    cache.parse(new File("a.xml"), coverage);
+    cache.parse(new File("a.xml"), coverage);
+    cache.parse(new File("b.xml"), coverage);
+
+    verify(parser, times(1)).parse(eq(new File("a.xml")), any(Coverage.class));
+    verify(parser, times(1)).parse(eq(new File("b.xml")), any(Coverage.class));
+    assertThat(coverage.hits("a.xml").get(1)).isEqualTo(2);
+    assertThat(coverage.hits("b.xml").get(1)).isEqualTo(1);
+    assertThat(CoverageParserCache.statistics()).isEqualTo("Coverage parser cache: 1 hits, 2 misses, 0 evictions, 2 entries holding 4 cells");
+  }
+
+  @Test
+  public void least_recently_used_entries_are_evicted() {
+    CoverageParserCache cache = new CoverageParserCache(parser, null, 4);
+
+    cache.parse(new File("a.xml"), new Coverage());
+    cache.parse(new File("b.xml"), new Coverage());
+    cache.parse(new File("a.xml"), new Coverage());
+    cache.parse(new File("c.xml"), new Coverage());
+    assertThat(CoverageParserCache.statistics()).isEqualTo("Coverage parser cache: 1 hits, 3 misses, 1 evictions, 2 entries holding 4 cells");
+
+    cache.parse(new File("a.xml"), new Coverage());
+    cache.parse(new File("b.xml"), new Coverage());
+
+    verify(parser, times(1)).parse(eq(new File("a.xml")), any(Coverage.class));
+    verify(parser, times(2)).parse(eq(new File("b.xml")), any(Coverage.class));
+    verify(parser, times(1)).parse(eq(new File("c.xml")), any(Coverage.class));
+  }
+
+  @Test
+  public void entries_larger_than_the_limit_are_not_cached() {
+    CoverageParserCache cache = new CoverageParserCache(parser, null, 1);
+
+    Coverage coverage = new Coverage();
+    cache.parse(new File("a.xml"), coverage);
+    cache.parse(new File("a.xml"), coverage);
+
+    verify(parser, times(2)).parse(eq(new File("a.xml")), any(Coverage.class));
+    assertThat(coverage.hits("a.xml").get(1)).isEqualTo(2);
+    assertThat(CoverageParserCache.statistics()).isEqualTo("Coverage parser cache: 0 hits, 2 misses, 0 evictions, 0 entries holding 0 cells");
+  }
+
+  @Test
+  public void concurrent_requests_share_a_single_parsing() throws Exception {
+    final CountDownLatch parsingStarted = new CountDownLatch(1);
+    final CountDownLatch waitersStarted = new CountDownLatch(1);
+    CoverageParser slowParser = mock(CoverageParser.class);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        parsingStarted.countDown();
+        waitersStarted.await(10, TimeUnit.SECONDS);
+        ((Coverage) invocation.getArguments()[1]).addHits("a.xml", 1, 1);
+        return null;
+      } }).when(slowParser).parse(any(File.class), any(Coverage.class));
+
+    final CoverageParserCache cache = new CoverageParserCache(slowParser);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Coverage>> futures = Lists.newArrayList();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(new Callable<Coverage>() {
+          @Override
+          public Coverage call() {
+            Coverage coverage = new Coverage();
+            cache.parse(new File("a.xml"), coverage);
+            return coverage;
+          }
+        }));
+      }
+      parsingStarted.await(10, TimeUnit.SECONDS);
+      waitersStarted.countDown();
+
+      for (Future<Coverage> future : futures) {
+        assertThat(future.get().hits("a.xml").get(1)).isEqualTo(1);
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    verify(slowParser, times(1)).parse(eq(new File("a.xml")), any(Coverage.class));
+    assertThat(CoverageParserCache.statistics()).isEqualTo("Coverage parser cache: 7 hits, 1 misses, 0 evictions, 1 entries holding 1 cells");
+  }
+
+  @Test
+  public void failed_parsing_is_not_cached() {
+    CoverageParser failingParser = mock(CoverageParser.class);
+    doThrow(new ParseErrorException("foo")).when(failingParser).parse(any(File.class), any(Coverage.class));
+    CoverageParserCache cache = new CoverageParserCache(failingParser);
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.parse(new File("a.xml"), new Coverage());
+        fail();
+      } catch (ParseErrorException e) {
+        assertThat(e.getMessage()).isEqualTo("foo");
+      }
+    }
+
+    verify(failingParser, times(2)).parse(eq(new File("a.xml")), any(Coverage.class));
+  }
+
+  @Test
+  public void report_modified_during_its_parsing_is_parsed_again() throws Exception {
+    final File report = tmp.newFile("a.xml");
+    Files.write("foo", report, Charsets.UTF_8);
+    File directory = tmp.newFolder("cache");
+
+    CoverageParser modifyingParser = mock(CoverageParser.class);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        ((Coverage) invocation.getArguments()[1]).addHits("a.xml", 1, 1);
+        Files.write("foobar", report, Charsets.UTF_8);
+        return null;
+      } }).when(modifyingParser).parse(any(File.class), any(Coverage.class));
+    new CoverageParserCache(modifyingParser, new PersistentCoverageCache(directory, false)).parse(report, new Coverage());
+
+    CoverageParserCache.clear();
+    new CoverageParserCache(parser, new PersistentCoverageCache(directory, false)).parse(report, new Coverage());
+    verify(parser).parse(eq(report), any(Coverage.class));
+  }
+
+}
@@ -19,12 +19,20 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
@@ -34,7 +42,9 @@ import org.sonar.api.resources.Language;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 
+import java.io.File;
 import java.util.List;
+import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -43,6 +53,9 @@ import static org.mockito.Mockito.when;
 
 public class CoverageReportImportSensorTest {
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void should_execute_on_project() {
     Settings settings = mock(Settings.class);
@@ -103,6 +116,34 @@ public class CoverageReportImportSensorTest {
     checkMeasure(values.get(1), CoreMetrics.UNCOVERED_LINES, 1.0);
   }
 
+  @Test
+  public void analyze_conditions() {
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 24, 1);
+    coverage.appendCondition("Foo.cs", 24, true);
+    coverage.appendCondition("Foo.cs", 24, false);
+
+    FileProvider fileProvider = mock(FileProvider.class);
+    org.sonar.api.resources.File csSonarFile = mockSonarFile("cs");
+    when(fileProvider.fromPath("Foo.cs")).thenReturn(csSonarFile);
+
+    SensorContext context = mock(SensorContext.class);
+    CoverageConfiguration coverageConf = new CoverageConfiguration("cs", "", "", "", "", "");
+    new CoverageReportImportSensor(mock(Settings.class), coverageConf, mock(CoverageAggregator.class)).analyze(context, fileProvider, coverage);
+
+    ArgumentCaptor<Measure> captor = ArgumentCaptor.forClass(Measure.class);
+    verify(context, Mockito.atLeastOnce()).saveMeasure(Mockito.eq(csSonarFile), captor.capture());
+
+    Map<Metric, Measure> measures = Maps.newHashMap();
+    for (Measure measure : captor.getAllValues()) {
+      measures.put(measure.getMetric(), measure);
+    }
+    checkMeasure(measures.get(CoreMetrics.CONDITIONS_TO_COVER), CoreMetrics.CONDITIONS_TO_COVER, 2.0);
+    checkMeasure(measures.get(CoreMetrics.UNCOVERED_CONDITIONS), CoreMetrics.UNCOVERED_CONDITIONS, 1.0);
+    assertThat(measures.get(CoreMetrics.CONDITIONS_BY_LINE).getData()).isEqualTo("24=2");
+    assertThat(measures.get(CoreMetrics.COVERED_CONDITIONS_BY_LINE).getData()).isEqualTo("24=1");
+  }
+
   @Test
   public void analyseWithCache() {
 	  Settings settings = mock(Settings.class);
@@ -126,6 +167,120 @@ public class CoverageReportImportSensorTest {
     verify(coverageAggregator).aggregate(Mockito.any(WildcardPatternFileProvider.class), Mockito.any(Coverage.class));
   }
 
+  @Test
+  public void analyze_only_files_under_module_base_dir() throws Exception {
+    Settings settings = mock(Settings.class);
+    when(settings.getBoolean("globalCache")).thenReturn(true);
+
+    File moduleDir = tmp.newFolder("module");
+    File otherModuleDir = tmp.newFolder("other");
+    String foo = new File(moduleDir, "Foo.cs").getCanonicalPath();
+    String bar = new File(otherModuleDir, "Bar.cs").getCanonicalPath();
+
+    Coverage coverage = new Coverage();
+    coverage.addHits(foo, 1, 1);
+    coverage.addHits(bar, 1, 1);
+
+    CoverageAggregator coverageAggregator = mock(CoverageAggregator.class);
+    SensorContext context = mock(SensorContext.class);
+
+    FileProvider moduleFileProvider = mock(FileProvider.class);
+    when(moduleFileProvider.baseDir()).thenReturn(moduleDir);
+    FileProvider otherModuleFileProvider = mock(FileProvider.class);
+    when(otherModuleFileProvider.baseDir()).thenReturn(otherModuleDir);
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("cs", "globalCache", "", "", "", "");
+    CoverageReportImportSensor.clearCache();
+    new CoverageReportImportSensor(settings, coverageConf, coverageAggregator).analyze(context, moduleFileProvider, coverage);
+    new CoverageReportImportSensor(settings, coverageConf, coverageAggregator).analyze(context, otherModuleFileProvider, new Coverage());
+    CoverageReportImportSensor.clearCache();
+
+    verify(coverageAggregator).aggregate(Mockito.any(WildcardPatternFileProvider.class), Mockito.eq(coverage));
+    verify(moduleFileProvider).fromPath(foo);
+    verify(moduleFileProvider, Mockito.never()).fromPath(bar);
+    verify(otherModuleFileProvider).fromPath(bar);
+    verify(otherModuleFileProvider, Mockito.never()).fromPath(foo);
+  }
+
+  @Test
+  public void analyze_with_snapshot() throws Exception {
+    File snapshot = new File(tmp.getRoot(), "snapshot.bin");
+    File report = tmp.newFile("report.xml");
+    String foo = new File(tmp.getRoot(), "Foo.cs").getCanonicalPath();
+
+    Settings settings = mock(Settings.class);
+    when(settings.getBoolean("globalCache")).thenReturn(true);
+    when(settings.hasKey("globalCache.snapshot")).thenReturn(true);
+    when(settings.getString("globalCache.snapshot")).thenReturn(snapshot.getAbsolutePath());
+
+    final Coverage parsed = new Coverage();
+    parsed.addHits(foo, 1, 3);
+    CoverageAggregator coverageAggregator = mock(CoverageAggregator.class);
+    when(coverageAggregator.reportFiles(Mockito.any(WildcardPatternFileProvider.class))).thenReturn(ImmutableList.of(report));
+    when(coverageAggregator.aggregate(Mockito.any(WildcardPatternFileProvider.class), Mockito.any(Coverage.class)))
+      .thenAnswer(new Answer<Coverage>() {
+        @Override
+        public Coverage answer(InvocationOnMock invocation) {
+          Coverage coverage = (Coverage) invocation.getArguments()[1];
+          coverage.add(parsed);
+          return coverage;
+        }
+      });
+
+    FileProvider fileProvider = mock(FileProvider.class);
+    org.sonar.api.resources.File csSonarFile = mockSonarFile("cs");
+    when(fileProvider.fromPath(foo)).thenReturn(csSonarFile);
+    CoverageConfiguration coverageConf = new CoverageConfiguration("cs", "globalCache", "", "", "", "");
+
+    CoverageReportImportSensor.clearCache();
+    new CoverageReportImportSensor(settings, coverageConf, coverageAggregator).analyze(mock(SensorContext.class), fileProvider);
+    assertThat(snapshot).exists();
+
+    // A later analysis, in another JVM, attaches to the snapshot
+    CoverageReportImportSensor.clearCache();
+    SensorContext context = mock(SensorContext.class);
+    new CoverageReportImportSensor(settings, coverageConf, coverageAggregator).analyze(context, fileProvider);
+    verify(coverageAggregator, Mockito.times(1)).aggregate(Mockito.any(WildcardPatternFileProvider.class), Mockito.any(Coverage.class));
+    verify(context, Mockito.atLeastOnce()).saveMeasure(Mockito.any(Resource.class), Mockito.any(Measure.class));
+
+    // The snapshot is outdated as soon as a report changes
+    CoverageReportImportSensor.clearCache();
+    Files.append("<changed />", report, Charsets.UTF_8);
+    new CoverageReportImportSensor(settings, coverageConf, coverageAggregator).analyze(mock(SensorContext.class), fileProvider);
+    CoverageReportImportSensor.clearCache();
+    verify(coverageAggregator, Mockito.times(2)).aggregate(Mockito.any(WildcardPatternFileProvider.class), Mockito.any(Coverage.class));
+  }
+
+  @Test
+  public void analyze_lazily() throws Exception {
+    Settings settings = mock(Settings.class);
+    when(settings.getBoolean(LazyCoverage.PROPERTY_KEY)).thenReturn(true);
+
+    String foo = new File("Foo.cs").getCanonicalPath();
+    CoverageParser parser = new CoverageParser() {
+      @Override
+      public void parse(File file, Coverage coverage) {
+        coverage.addHits(file.getPath(), 1, 1);
+      }
+    };
+    LazyCoverage lazyCoverage = new LazyCoverage(ImmutableList.of(new ParallelCoverageParsing.Task(parser, new File(foo))));
+    CoverageAggregator coverageAggregator = mock(CoverageAggregator.class);
+    when(coverageAggregator.aggregateLazily(Mockito.any(WildcardPatternFileProvider.class))).thenReturn(lazyCoverage.index());
+
+    FileProvider fileProvider = mock(FileProvider.class);
+    org.sonar.api.resources.File csSonarFile = mockSonarFile("cs");
+    when(fileProvider.fromPath(foo)).thenReturn(csSonarFile);
+    SensorContext context = mock(SensorContext.class);
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("cs", "", "", "", "", "");
+    new CoverageReportImportSensor(settings, coverageConf, coverageAggregator).analyze(context, fileProvider);
+
+    verify(coverageAggregator, Mockito.never()).aggregate(Mockito.any(WildcardPatternFileProvider.class), Mockito.any(Coverage.class));
+    ArgumentCaptor<Measure> captor = ArgumentCaptor.forClass(Measure.class);
+    verify(context, Mockito.atLeastOnce()).saveMeasure(Mockito.eq(csSonarFile), captor.capture());
+    checkMeasure(captor.getAllValues().get(0), CoreMetrics.LINES_TO_COVER, 1.0);
+  }
+
   private static void checkMeasure(Measure measure, Metric metric, Double value) {
     assertThat(measure.getMetric()).isEqualTo(metric);
     assertThat(measure.getValue()).isEqualTo(value);
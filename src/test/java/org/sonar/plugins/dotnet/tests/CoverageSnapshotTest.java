@@ -0,0 +1,137 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.fest.assertions.MapAssert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CoverageSnapshotTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void write_and_open() throws Exception {
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 2);
+    coverage.addHits("Foo.cs", 3, 0);
+    coverage.addHits("Foo.cs", 16707566, 1);
+    coverage.appendCondition("Foo.cs", 3, true);
+    coverage.appendCondition("Foo.cs", 3, false);
+    coverage.addHits("Bar.cs", 42, 7);
+
+    ReportFingerprint report = new ReportFingerprint("report.xml", 12, 34, null);
+    File file = new File(tmp.getRoot(), "snapshots/coverage.bin");
+    CoverageSnapshot.write(coverage, ImmutableList.of(report), file);
+
+    MappedCoverage snapshot = CoverageSnapshot.open(file, ImmutableList.of(report));
+    assertThat(snapshot.reports()).containsOnly(report);
+    assertThat(snapshot.files()).containsOnly("Foo.cs", "Bar.cs");
+    assertThat(snapshot.cellCount()).isEqualTo(coverage.cellCount());
+    assertThat(snapshot.hits("Foo.cs"))
+      .hasSize(3)
+      .includes(
+        MapAssert.entry(1, 2),
+        MapAssert.entry(3, 0),
+        MapAssert.entry(16707566, 1));
+    assertThat(snapshot.hits("Bar.cs")).hasSize(1).includes(MapAssert.entry(42, 7));
+    assertThat(snapshot.conditions("Foo.cs")).hasSize(1).includes(MapAssert.entry(3, 2));
+    assertThat(snapshot.coveredConditions("Foo.cs")).hasSize(1).includes(MapAssert.entry(3, 1));
+    assertThat(snapshot.coveredConditionsMasks("Foo.cs")).hasSize(1).includes(MapAssert.entry(3, 1L));
+    assertThat(snapshot.hits("Foo.cs")).hasSize(3);
+    assertThat(snapshot.hits("Baz.cs")).isEmpty();
+    assertThat(snapshot.conditions("Baz.cs")).isEmpty();
+
+    Coverage copy = new Coverage();
+    copy.addHits("Bar.cs", 42, 1);
+    copy.add(snapshot);
+    assertThat(copy.hits("Bar.cs")).includes(MapAssert.entry(42, 8));
+    assertThat(copy.coveredConditions("Foo.cs")).includes(MapAssert.entry(3, 1));
+  }
+
+  @Test
+  public void overwrite() throws Exception {
+    File file = tmp.newFile("coverage.bin");
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 2);
+    CoverageSnapshot.write(coverage, ImmutableList.<ReportFingerprint>of(), file);
+    coverage.addHits("Bar.cs", 1, 2);
+    CoverageSnapshot.write(coverage, ImmutableList.<ReportFingerprint>of(), file);
+
+    assertThat(CoverageSnapshot.open(file, ImmutableList.<ReportFingerprint>of()).files()).containsOnly("Foo.cs", "Bar.cs");
+  }
+
+  @Test
+  public void missing_or_invalid_snapshot() throws Exception {
+    assertThat(CoverageSnapshot.open(new File(tmp.getRoot(), "missing.bin"), ImmutableList.<ReportFingerprint>of())).isNull();
+
+    File invalid = tmp.newFile("invalid.bin");
+    Files.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, invalid);
+    assertThat(CoverageSnapshot.open(invalid, ImmutableList.<ReportFingerprint>of())).isNull();
+
+    File truncated = tmp.newFile("truncated.bin");
+    Files.write(new byte[] {0x44, 0x4E, 0x43, 0x53, 0, 0, 0, 1, 0}, truncated);
+    assertThat(CoverageSnapshot.open(truncated, ImmutableList.<ReportFingerprint>of())).isNull();
+  }
+
+  @Test
+  public void outdated_snapshot() throws Exception {
+    File file = tmp.newFile("coverage.bin");
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 2);
+    CoverageSnapshot.write(coverage, ImmutableList.of(new ReportFingerprint("report.xml", 12, 34, null)), file);
+
+    assertThat(CoverageSnapshot.open(file, ImmutableList.of(new ReportFingerprint("report.xml", 12, 35, null)))).isNull();
+    assertThat(CoverageSnapshot.open(file, ImmutableList.<ReportFingerprint>of())).isNull();
+    assertThat(file.delete()).isTrue();
+  }
+
+  @Test
+  public void corrupted_snapshot() throws Exception {
+    File file = tmp.newFile("coverage.bin");
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 2);
+    coverage.addHits("Foo.cs", 2, 3);
+    CoverageSnapshot.write(coverage, ImmutableList.<ReportFingerprint>of(), file);
+
+    byte[] bytes = Files.toByteArray(file);
+    byte[] truncated = new byte[bytes.length - 2];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    Files.write(truncated, file);
+    MappedCoverage snapshot = CoverageSnapshot.open(file, ImmutableList.<ReportFingerprint>of());
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("The coverage snapshot is corrupted");
+    snapshot.hits("Foo.cs");
+  }
+
+}
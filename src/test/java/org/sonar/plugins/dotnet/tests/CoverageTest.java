@@ -0,0 +1,136 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import org.fest.assertions.MapAssert;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CoverageTest {
+
+  @Test
+  public void add_hits() {
+    Coverage coverage = new Coverage();
+    coverage.addHits("foo.cs", 1, 2);
+    coverage.addHits("foo.cs", 1, 3);
+    coverage.addHits("foo.cs", 3, 0);
+    coverage.addHits("bar.cs", 100000, 1);
+
+    assertThat(coverage.files()).containsOnly("foo.cs", "bar.cs");
+    assertThat(coverage.hits("foo.cs"))
+      .hasSize(2)
+      .includes(
+        MapAssert.entry(1, 5),
+        MapAssert.entry(3, 0));
+    assertThat(coverage.hits("foo.cs").get(2)).isNull();
+    assertThat(coverage.hits("bar.cs")).hasSize(1).includes(MapAssert.entry(100000, 1));
+    assertThat(coverage.hits("baz.cs")).isEmpty();
+  }
+
+  @Test
+  public void dense_and_sparse_lines() {
+    Coverage coverage = new Coverage();
+    for (int i = 0; i < 1000; i++) {
+      coverage.addHits("foo.cs", i * 100, i);
+    }
+    coverage.addHits("foo.cs", -1, 1);
+    coverage.addHits("foo.cs", 16707566, 0);
+
+    Map<Integer, Integer> hits = coverage.hits("foo.cs");
+    assertThat(hits).hasSize(1002);
+    assertThat(hits.get(65500)).isEqualTo(655);
+    assertThat(hits.get(65600)).isEqualTo(656);
+    assertThat(hits.get(99900)).isEqualTo(999);
+    assertThat(hits.get(-1)).isEqualTo(1);
+    assertThat(hits.get(16707566)).isEqualTo(0);
+
+    int entries = 0;
+    for (Map.Entry<Integer, Integer> entry : hits.entrySet()) {
+      assertThat(hits.get(entry.getKey())).isEqualTo(entry.getValue());
+      entries++;
+    }
+    assertThat(entries).isEqualTo(1002);
+  }
+
+  @Test
+  public void add_coverage() {
+    Coverage coverage = new Coverage();
+    coverage.addHits("foo.cs", 1, 1);
+    coverage.addHits("foo.cs", 100000, 1);
+
+    Coverage other = new Coverage();
+    other.addHits("foo.cs", 1, 2);
+    other.addHits("foo.cs", 2, 0);
+    other.addHits("foo.cs", 100000, 3);
+    other.addHits("bar.cs", 1, 4);
+
+    coverage.add(other);
+
+    assertThat(coverage.files()).containsOnly("foo.cs", "bar.cs");
+    assertThat(coverage.hits("foo.cs"))
+      .hasSize(3)
+      .includes(
+        MapAssert.entry(1, 3),
+        MapAssert.entry(2, 0),
+        MapAssert.entry(100000, 4));
+    assertThat(coverage.hits("bar.cs")).hasSize(1).includes(MapAssert.entry(1, 4));
+  }
+
+  @Test
+  public void conditions() {
+    Coverage coverage = new Coverage();
+    coverage.appendCondition("foo.cs", 1, true);
+    coverage.appendCondition("foo.cs", 1, false);
+    coverage.appendCondition("foo.cs", 1, false);
+    coverage.appendCondition("foo.cs", 2, false);
+    coverage.appendCondition("foo.cs", 100000, true);
+
+    assertThat(coverage.conditions("foo.cs")).hasSize(2).includes(MapAssert.entry(1, 3), MapAssert.entry(2, 1));
+    assertThat(coverage.coveredConditions("foo.cs")).hasSize(2).includes(MapAssert.entry(1, 1), MapAssert.entry(2, 0));
+    assertThat(coverage.hits("foo.cs")).isEmpty();
+    assertThat(coverage.conditions("bar.cs")).isEmpty();
+    assertThat(coverage.cellCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void add_conditions_of_another_report() {
+    Coverage coverage = new Coverage();
+    coverage.addHits("foo.cs", 1, 1);
+    coverage.appendCondition("foo.cs", 1, true);
+    coverage.appendCondition("foo.cs", 1, false);
+
+    Coverage other = new Coverage();
+    other.addHits("foo.cs", 1, 1);
+    other.appendCondition("foo.cs", 1, false);
+    other.appendCondition("foo.cs", 1, true);
+    other.appendCondition("foo.cs", 2, true);
+
+    coverage.add(other);
+    coverage.add(other);
+
+    assertThat(coverage.conditions("foo.cs")).hasSize(2).includes(MapAssert.entry(1, 2), MapAssert.entry(2, 1));
+    assertThat(coverage.coveredConditions("foo.cs")).hasSize(2).includes(MapAssert.entry(1, 2), MapAssert.entry(2, 1));
+    assertThat(coverage.hits("foo.cs")).hasSize(1).includes(MapAssert.entry(1, 3));
+  }
+
+}
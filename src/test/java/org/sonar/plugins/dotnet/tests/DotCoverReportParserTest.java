@@ -19,10 +19,13 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 import org.fest.assertions.MapAssert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 
@@ -34,6 +37,9 @@ public class DotCoverReportParserTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void no_title() {
     thrown.expect(IllegalArgumentException.class);
@@ -83,4 +89,51 @@ public class DotCoverReportParserTest {
     new DotCoverReportParser().parse(new File("src/test/resources/dotcover/invalid_path.html"), mock(Coverage.class));
   }
 
+  @Test
+  public void last_complete_highlight_ranges_call_wins() throws Exception {
+    Coverage coverage = new Coverage();
+    new DotCoverReportParser().parse(newReport("<title>foo.cs</title><title>bar.cs</title>\n"
+      + "<script type=\"text/javascript\">highlightRanges([[1,1,1,1,1]]);</script>\n"
+      + "<script type=\"text/javascript\">\n  highlightRanges([[2,1,2,1,3],[x,1,1,1,1],[3,1,3,1],[4,1,4,1,0]]);\n  </script>\n"
+      + "<script type=\"text/javascript\" src=\"foo.js\"></script>\n"
+      + "<script type=\"text/javascript\">highlightRanges([[5,1,5,1,1]]);"), coverage);
+
+    String path = new File("foo.cs").getCanonicalPath();
+    assertThat(coverage.files()).containsOnly(path);
+    assertThat(coverage.hits(path))
+      .hasSize(2)
+      .includes(
+        MapAssert.entry(2, 3),
+        MapAssert.entry(4, 0));
+  }
+
+  @Test
+  public void nested_highlight_ranges_call() throws Exception {
+    Coverage coverage = new Coverage();
+    new DotCoverReportParser().parse(newReport("<title>foo.cs</title>\n"
+      + "<script type=\"text/javascript\">highlightRanges([[1,1,1,1,1],\n"
+      + "<script type=\"text/javascript\">\n"
+      + "[2,1,2,1,2]]);</script>\n"
+      + "<script type=\"text/javascript\">highlightRanges([[3,1,3,1,3],<script type=\"text/javascript\">highlightRanges([[4,1,4,1,4]]);</script>"), coverage);
+
+    assertThat(coverage.hits(new File("foo.cs").getCanonicalPath()))
+      .hasSize(1)
+      .includes(MapAssert.entry(4, 4));
+  }
+
+  @Test
+  public void no_complete_highlight_ranges_call() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("The report contents does not match the following regular expression: "
+      + ".*<script type=\"text/javascript\">\\s*+highlightRanges\\(\\[(.*?)\\]\\);\\s*+</script>.*");
+    new DotCoverReportParser().parse(newReport("<title>foo.cs</title>\n"
+      + "<script type=\"text/javascript\">highlightRanges([[1,1,1,1,1]]); </scrip>"), mock(Coverage.class));
+  }
+
+  private File newReport(String contents) throws Exception {
+    File report = tmp.newFile("report.html");
+    Files.write(contents, report, Charsets.UTF_8);
+    return report;
+  }
+
 }
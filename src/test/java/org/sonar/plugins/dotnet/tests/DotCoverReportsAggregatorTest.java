@@ -19,13 +19,23 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -34,6 +44,9 @@ public class DotCoverReportsAggregatorTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void no_sources() {
     thrown.expect(IllegalArgumentException.class);
@@ -45,7 +58,7 @@ public class DotCoverReportsAggregatorTest {
   @Test
   public void not_html() {
     thrown.expect(IllegalArgumentException.class);
-    thrown.expectMessage("Only dotCover HTML reports which start with \"<!DOCTYPE html>\" are supported.");
+    thrown.expectMessage("Only dotCover HTML reports which start with \"<!DOCTYPE html>\" and dotCover DetailedXML reports are supported.");
     new DotCoverReportsAggregator(mock(DotCoverReportParser.class)).parse(new File("src/test/resources/dotcover_aggregator/not_html.html"), mock(Coverage.class));
   }
 
@@ -68,4 +81,79 @@ public class DotCoverReportsAggregatorTest {
     verify(parser, Mockito.never()).parse(new File("src/test/resources/dotcover_aggregator/foo.bar/src/nosource.html"), coverage);
   }
 
+  @Test
+  public void html_in_zip_archive() throws Exception {
+    File archive = tmp.newFile("reports.zip");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+    try {
+      out.putNextEntry(new ZipEntry("foo.bar.html"));
+      out.write(Files.toByteArray(new File("src/test/resources/dotcover_aggregator/foo.bar.html")));
+      out.closeEntry();
+    } finally {
+      out.close();
+    }
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("dotCover HTML reports cannot be read from a zip archive, as their sources folder must be on disk: ");
+    new DotCoverReportsAggregator(mock(DotCoverReportParser.class)).parse(ReportStreams.archiveEntry(archive, "foo.bar.html"), mock(Coverage.class));
+  }
+
+  @Test
+  public void detailed_xml() {
+    DotCoverReportParser parser = mock(DotCoverReportParser.class);
+    DotCoverDetailedXmlReportParser detailedXmlParser = mock(DotCoverDetailedXmlReportParser.class);
+
+    Coverage coverage = new Coverage();
+    new DotCoverReportsAggregator(parser, detailedXmlParser).parse(new File("src/test/resources/dotcover_aggregator/detailed.xml"), coverage);
+
+    verify(detailedXmlParser).parse(new File("src/test/resources/dotcover_aggregator/detailed.xml"), coverage);
+    verify(parser, Mockito.never()).parse(Mockito.any(File.class), Mockito.any(Coverage.class));
+  }
+
+  @Test
+  public void plain_xml() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Only the DetailedXML dotCover XML reports, which contain line information, are supported.");
+    new DotCoverReportsAggregator(mock(DotCoverReportParser.class)).parse(new File("src/test/resources/dotcover_aggregator/plain.xml"), mock(Coverage.class));
+  }
+
+  @Test
+  public void valid_in_parallel() throws Exception {
+    Coverage coverage = new Coverage();
+    new DotCoverReportsAggregator(new DotCoverReportParser(), new DotCoverDetailedXmlReportParser(), 4)
+      .parse(new File("src/test/resources/dotcover_aggregator/parallel.html"), coverage);
+
+    Coverage sequentialCoverage = new Coverage();
+    new DotCoverReportsAggregator(new DotCoverReportParser())
+      .parse(new File("src/test/resources/dotcover_aggregator/parallel.html"), sequentialCoverage);
+
+    assertThat(coverage.files()).hasSize(4);
+    assertThat(coverage.files()).isEqualTo(sequentialCoverage.files());
+    for (String file : sequentialCoverage.files()) {
+      assertThat(coverage.hits(file)).isEqualTo(sequentialCoverage.hits(file));
+    }
+  }
+
+  @Test
+  public void pages_are_parsed_sequentially_on_a_report_worker() {
+    final Set<String> threadNames = Collections.synchronizedSet(Sets.<String>newHashSet());
+    DotCoverReportParser parser = new DotCoverReportParser() {
+      @Override
+      public void parse(File file, Coverage coverage) {
+        threadNames.add(Thread.currentThread().getName());
+      }
+    };
+    DotCoverReportsAggregator aggregator = new DotCoverReportsAggregator(parser, new DotCoverDetailedXmlReportParser(), 4);
+    File report = new File("src/test/resources/dotcover_aggregator/parallel.html");
+
+    ParallelCoverageParsing.parse(
+      ImmutableList.of(new ParallelCoverageParsing.Task(aggregator, report), new ParallelCoverageParsing.Task(aggregator, report)),
+      new Coverage(), 2, "coverage-parser");
+
+    assertThat(threadNames).isNotEmpty();
+    for (String threadName : threadNames) {
+      assertThat(threadName).startsWith("coverage-parser-");
+    }
+  }
+
 }
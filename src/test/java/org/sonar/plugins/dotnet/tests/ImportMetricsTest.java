@@ -0,0 +1,121 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ImportMetricsTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void instrumented_parser() {
+    File report = new File("src/test/resources/opencover/valid.xml");
+    ImportMetrics importMetrics = new ImportMetrics("Coverage");
+    Coverage coverage = new Coverage();
+
+    importMetrics.instrument("OpenCover", new OpenCoverReportParser()).parse(report, coverage);
+
+    List<ImportMetrics.Report> reports = importMetrics.reports();
+    assertThat(reports).hasSize(1);
+    ImportMetrics.Report metrics = reports.get(0);
+    assertThat(metrics.parser()).isEqualTo("OpenCover");
+    assertThat(metrics.path()).isEqualTo(report.getAbsolutePath());
+    assertThat(metrics.bytes()).isEqualTo(report.length());
+    assertThat(metrics.elements()).isGreaterThan(28);
+    assertThat(metrics.cells()).isEqualTo(coverage.cellCount());
+    assertThat(metrics.tests()).isEqualTo(0);
+
+    ImportMetrics.addRead(1, 1);
+    assertThat(metrics.bytes()).isEqualTo(report.length());
+  }
+
+  @Test
+  public void reads_of_worker_threads_are_attributed_to_their_report() throws Exception {
+    ImportMetrics importMetrics = new ImportMetrics("Coverage");
+    ImportMetrics.Report report = importMetrics.startReport("Test", new File("foo.xml"));
+
+    Thread worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        ImportMetrics.addRead(10, 2);
+      }
+    });
+    worker.start();
+    worker.join();
+    ImportMetrics.addRead(5, 1);
+    assertThat(ImportMetrics.bytesRead()).isEqualTo(15);
+    report.stop(3, 4);
+    assertThat(ImportMetrics.bytesRead()).isEqualTo(-1);
+
+    assertThat(report.bytes()).isEqualTo(15);
+    assertThat(report.elements()).isEqualTo(3);
+    assertThat(report.cells()).isEqualTo(3);
+    assertThat(report.tests()).isEqualTo(4);
+  }
+
+  @Test
+  public void unit_test_results_aggregator() {
+    ImportMetrics importMetrics = new ImportMetrics("Unit test results");
+    WildcardPatternFileProvider wildcardPatternFileProvider = new WildcardPatternFileProvider(new File("src/test/resources/nunit"), File.separator);
+    Settings settings = new Settings();
+    settings.setProperty("nunit", "valid.xml");
+
+    new UnitTestResultsAggregator(new UnitTestConfiguration("vs", "nunit"), settings)
+      .aggregate(wildcardPatternFileProvider, new UnitTestResults(), importMetrics);
+
+    assertThat(importMetrics.reports()).hasSize(1);
+    assertThat(importMetrics.reports().get(0).parser()).isEqualTo("NUnitTestResultsFileParser");
+    assertThat(importMetrics.reports().get(0).tests()).isEqualTo(196);
+  }
+
+  @Test
+  public void json() throws Exception {
+    ImportMetrics importMetrics = new ImportMetrics("Coverage");
+    importMetrics.startReport("Open\"Cover", new File("foo\\bar.xml")).stop(1, 0);
+
+    String json = importMetrics.toJson("module:key");
+    assertThat(json).startsWith("{\"sensor\":\"Coverage\",\"module\":\"module:key\",\"wallTimeMs\":");
+    assertThat(json).contains("\"canonicalizationTimeMs\":0,\"measureSaveTimeMs\":0,\"reports\":[{\"parser\":\"Open\\\"Cover\",\"path\":\"");
+    assertThat(json).contains("bar.xml\",\"wallTimeMs\":");
+    assertThat(json).endsWith(",\"bytes\":0,\"elements\":0,\"cells\":1,\"tests\":0}]}");
+    assertThat(new ImportMetrics("Coverage").toJson(null)).contains("\"module\":null").endsWith("\"reports\":[]}");
+
+    File file = new File(tmp.getRoot(), "metrics" + File.separator + "import.json");
+    importMetrics.appendJson(file, null);
+    importMetrics.appendJson(file, "other");
+    List<String> lines = Files.readLines(file, Charsets.UTF_8);
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0)).contains("\"module\":null");
+    assertThat(lines.get(1)).contains("\"module\":\"other\"");
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.fest.assertions.MapAssert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LazyCoverageTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void hits_are_parsed_on_demand() throws Exception {
+    CountingParser parser = new CountingParser(new OpenCoverReportParser());
+    LazyCoverage coverage = new LazyCoverage(ImmutableList.of(new ParallelCoverageParsing.Task(parser, new File("src/test/resources/opencover/valid.xml"))));
+    coverage.index();
+
+    String adder = new File("MyLibrary\\Adder.cs").getCanonicalPath();
+    String multiplier = new File("MyLibrary\\Multiplier.cs").getCanonicalPath();
+    assertThat(parser.parses).isEqualTo(1);
+    assertThat(coverage.files()).containsOnly(new File("MyLibraryNUnitTest\\AdderNUnitTest.cs").getCanonicalPath(), adder, multiplier);
+    assertThat(coverage.cellCount()).isEqualTo(0);
+
+    coverage.materialize(ImmutableSet.of(adder, "Unknown.cs"));
+    assertThat(parser.parses).isEqualTo(2);
+    assertThat(coverage.hits(adder)).hasSize(15).includes(MapAssert.entry(22, 6));
+    assertThat(coverage.conditions(adder)).includes(MapAssert.entry(12, 4));
+    assertThat(coverage.coveredConditions(adder)).includes(MapAssert.entry(12, 2));
+    assertThat(coverage.cellCount()).isEqualTo(17);
+    assertThat(coverage.hits("Unknown.cs")).isEmpty();
+    assertThat(parser.parses).isEqualTo(2);
+
+    coverage.materialize(ImmutableSet.of(adder));
+    assertThat(parser.parses).isEqualTo(2);
+
+    assertThat(coverage.hits(multiplier)).hasSize(3);
+    assertThat(parser.parses).isEqualTo(3);
+    assertThat(coverage.cellCount()).isEqualTo(3);
+
+    Coverage copy = new Coverage();
+    copy.add(coverage);
+    assertThat(copy.files()).isEqualTo(coverage.files());
+    assertThat(copy.hits(adder)).hasSize(15);
+  }
+
+  @Test
+  public void only_the_covering_reports_are_parsed_and_retained() throws Exception {
+    ReportGenerator generator = new ReportGenerator(42).sourceDir(tmp.newFolder("src")).filesPerModule(12).methodsPerFile(3).sequencePointsPerMethod(5);
+    CountingParser parser = new CountingParser(new OpenCoverReportParser());
+    List<ParallelCoverageParsing.Task> reports = Lists.newArrayList();
+    Coverage eager = new Coverage();
+    for (int report = 0; report < 4; report++) {
+      File file = generator.openCover(tmp.newFile(), report, 4);
+      reports.add(new ParallelCoverageParsing.Task(parser, file));
+      new OpenCoverReportParser().parse(file, eager);
+    }
+
+    LazyCoverage coverage = new LazyCoverage(reports).index();
+    assertThat(parser.parses).isEqualTo(4);
+    assertThat(coverage.files()).isEqualTo(eager.files());
+
+    String first = new File(generator.sourcePath(0)).getCanonicalPath();
+    coverage.materialize(ImmutableSet.of(first));
+    assertThat(parser.parses).isEqualTo(5);
+    assertThat(coverage.hits(first)).isEqualTo(eager.hits(first));
+    assertThat(coverage.cellCount()).isEqualTo(generator.sequencePointsPerFile());
+    assertThat(eager.cellCount()).isEqualTo(generator.files() * generator.sequencePointsPerFile());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void not_indexed() {
+    new LazyCoverage(ImmutableList.<ParallelCoverageParsing.Task>of()).files();
+  }
+
+  private static class CountingParser implements CoverageParser {
+
+    private final CoverageParser parser;
+    private int parses;
+
+    public CountingParser(CoverageParser parser) {
+      this.parser = parser;
+    }
+
+    @Override
+    public void parse(File file, Coverage coverage) {
+      parses++;
+      parser.parse(file, coverage);
+    }
+
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.Maps;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mocked file providers whose batch listing delegates to the single pattern one, so that tests only stub the latter.
+ */
+public final class MockFileProviders {
+
+  private MockFileProviders() {
+  }
+
+  public static WildcardPatternFileProvider mockFileProvider() {
+    WildcardPatternFileProvider wildcardPatternFileProvider = mock(WildcardPatternFileProvider.class);
+    stubBatchListFiles(wildcardPatternFileProvider);
+    return wildcardPatternFileProvider;
+  }
+
+  public static void stubBatchListFiles(final WildcardPatternFileProvider wildcardPatternFileProvider) {
+    when(wildcardPatternFileProvider.listFiles(Mockito.anyCollectionOf(String.class))).thenAnswer(new Answer<Map<String, Set<File>>>() {
+      @Override
+      public Map<String, Set<File>> answer(InvocationOnMock invocation) {
+        Map<String, Set<File>> filesByPattern = Maps.newHashMap();
+        for (Object pattern : (Collection<?>) invocation.getArguments()[0]) {
+          filesByPattern.put((String) pattern, wildcardPatternFileProvider.listFiles((String) pattern));
+        }
+        return filesByPattern;
+      }
+    });
+  }
+
+}
@@ -61,4 +61,24 @@ public class NUnitTestResultsFileParserTest {
     assertThat(results.errors()).isEqualTo(30);
   }
 
+  @Test
+  public void test_cases() {
+    UnitTestResults results = new UnitTestResults();
+    new NUnitTestResultsFileParser().parse(new File("src/test/resources/nunit/test_cases.xml"), results);
+
+    assertThat(results.tests()).isEqualTo(4);
+    assertThat(results.testCases()).isEqualTo(4);
+    checkTestCase(results.testCase(0), "MyLibraryNUnitTest.AdderNUnitTest.Passing", UnitTestResults.Outcome.PASSED, 125);
+    checkTestCase(results.testCase(1), "MyLibraryNUnitTest.AdderNUnitTest.Failing", UnitTestResults.Outcome.FAILED, 1500);
+    checkTestCase(results.testCase(2), "MyLibraryNUnitTest.AdderNUnitTest.Throwing", UnitTestResults.Outcome.ERROR, 25);
+    checkTestCase(results.testCase(3), "MyLibraryNUnitTest.AdderNUnitTest.Ignored", UnitTestResults.Outcome.SKIPPED, 0);
+    assertThat(results.executionTime()).isEqualTo(1650.0);
+  }
+
+  private static void checkTestCase(UnitTestResults.TestCase testCase, String name, UnitTestResults.Outcome outcome, long durationMillis) {
+    assertThat(testCase.name()).isEqualTo(name);
+    assertThat(testCase.outcome()).isEqualTo(outcome);
+    assertThat(testCase.durationMillis()).isEqualTo(durationMillis);
+  }
+
 }
@@ -95,6 +95,45 @@ public class OpenCoverReportParserTest {
         MapAssert.entry(11, 0),
         MapAssert.entry(12, 0),
         MapAssert.entry(13, 0));
+
+    assertThat(coverage.conditions(new File("MyLibrary\\Adder.cs").getCanonicalPath()))
+      .hasSize(2)
+      .includes(
+        MapAssert.entry(12, 4),
+        MapAssert.entry(22, 2));
+    assertThat(coverage.coveredConditions(new File("MyLibrary\\Adder.cs").getCanonicalPath()))
+      .hasSize(2)
+      .includes(
+        MapAssert.entry(12, 2),
+        MapAssert.entry(22, 1));
+    assertThat(coverage.conditions(new File("MyLibrary\\Multiplier.cs").getCanonicalPath())).isEmpty();
+  }
+
+  @Test
+  public void branch_points_with_lines() throws Exception {
+    Coverage coverage = new Coverage();
+    new OpenCoverReportParser().parse(new File("src/test/resources/opencover/branch_points_with_lines.xml"), coverage);
+
+    String adder = new File("MyLibrary\\Adder.cs").getCanonicalPath();
+    String helper = new File("MyLibrary\\Helper.cs").getCanonicalPath();
+
+    assertThat(coverage.conditions(adder)).hasSize(1).includes(MapAssert.entry(12, 2));
+    assertThat(coverage.coveredConditions(adder)).hasSize(1).includes(MapAssert.entry(12, 1));
+    assertThat(coverage.conditions(helper)).hasSize(1).includes(MapAssert.entry(5, 2));
+    assertThat(coverage.coveredConditions(helper)).hasSize(1).includes(MapAssert.entry(5, 2));
+  }
+
+  @Test
+  public void same_file_in_multiple_modules() throws Exception {
+    Coverage coverage = new Coverage();
+    new OpenCoverReportParser().parse(new File("src/test/resources/opencover/multiple_modules.xml"), coverage);
+
+    String adder = new File("MyLibrary\\Adder.cs").getCanonicalPath();
+
+    assertThat(coverage.files()).containsOnly(adder);
+    assertThat(coverage.hits(adder)).hasSize(2).includes(MapAssert.entry(11, 3), MapAssert.entry(12, 3));
+    assertThat(coverage.conditions(adder)).hasSize(1).includes(MapAssert.entry(12, 2));
+    assertThat(coverage.coveredConditions(adder)).hasSize(1).includes(MapAssert.entry(12, 2));
   }
 
   @Test
@@ -0,0 +1,128 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.fest.assertions.MapAssert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PersistentCoverageCacheTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void save_and_load() throws Exception {
+    File report = newReport("report.xml", "foo");
+    PersistentCoverageCache cache = new PersistentCoverageCache(new File(tmp.getRoot(), "cache"), false);
+
+    assertThat(cache.load(ReportFingerprint.of(report, false), new Coverage())).isFalse();
+
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 2);
+    coverage.addHits("Foo.cs", 3, 0);
+    coverage.addHits("Foo.cs", 16707566, 1);
+    coverage.addHits("Bar.cs", 42, 7);
+    coverage.appendCondition("Foo.cs", 3, false);
+    coverage.appendCondition("Foo.cs", 3, true);
+    cache.save(ReportFingerprint.of(report, false), coverage);
+
+    Coverage loaded = new Coverage();
+    loaded.addHits("Bar.cs", 42, 1);
+    assertThat(new PersistentCoverageCache(new File(tmp.getRoot(), "cache"), false).load(ReportFingerprint.of(report, false), loaded)).isTrue();
+
+    assertThat(loaded.files()).containsOnly("Foo.cs", "Bar.cs");
+    assertThat(loaded.hits("Foo.cs"))
+      .hasSize(3)
+      .includes(
+        MapAssert.entry(1, 2),
+        MapAssert.entry(3, 0),
+        MapAssert.entry(16707566, 1));
+    assertThat(loaded.hits("Bar.cs")).hasSize(1).includes(MapAssert.entry(42, 8));
+    assertThat(loaded.conditions("Foo.cs")).hasSize(1).includes(MapAssert.entry(3, 2));
+    assertThat(loaded.coveredConditions("Foo.cs")).hasSize(1).includes(MapAssert.entry(3, 1));
+    assertThat(loaded.conditions("Bar.cs")).isEmpty();
+  }
+
+  @Test
+  public void stale_entry() throws Exception {
+    File report = newReport("report.xml", "foo");
+    PersistentCoverageCache cache = new PersistentCoverageCache(new File(tmp.getRoot(), "cache"), false);
+
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 2);
+    cache.save(ReportFingerprint.of(report, false), coverage);
+
+    Files.write("foobar", report, Charsets.UTF_8);
+    Coverage loaded = new Coverage();
+    assertThat(cache.load(ReportFingerprint.of(report, false), loaded)).isFalse();
+    assertThat(loaded.files()).isEmpty();
+  }
+
+  @Test
+  public void stale_entry_with_content_hash() throws Exception {
+    File report = newReport("report.xml", "foo");
+    PersistentCoverageCache cache = new PersistentCoverageCache(new File(tmp.getRoot(), "cache"), true);
+
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 2);
+    cache.save(ReportFingerprint.of(report, true), coverage);
+    assertThat(cache.load(ReportFingerprint.of(report, true), new Coverage())).isTrue();
+
+    long lastModified = report.lastModified();
+    Files.write("bar", report, Charsets.UTF_8);
+    report.setLastModified(lastModified);
+    assertThat(cache.load(ReportFingerprint.of(report, true), new Coverage())).isFalse();
+  }
+
+  @Test
+  public void corrupted_entry() throws Exception {
+    File report = newReport("report.xml", "foo");
+    File directory = new File(tmp.getRoot(), "cache");
+    PersistentCoverageCache cache = new PersistentCoverageCache(directory, false);
+
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 2);
+    cache.save(ReportFingerprint.of(report, false), coverage);
+
+    File[] entries = directory.listFiles();
+    assertThat(entries).hasSize(1);
+    Files.write("garbage", entries[0], Charsets.UTF_8);
+
+    assertThat(cache.load(ReportFingerprint.of(report, false), new Coverage())).isFalse();
+
+    cache.save(ReportFingerprint.of(report, false), coverage);
+    assertThat(cache.load(ReportFingerprint.of(report, false), new Coverage())).isTrue();
+  }
+
+  private File newReport(String name, String contents) throws Exception {
+    File report = tmp.newFile(name);
+    Files.write(contents, report, Charsets.UTF_8);
+    return report;
+  }
+
+}
@@ -0,0 +1,440 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Writes synthetic coverage and unit test results reports of a configurable size, to test and benchmark at scale without real reports.
+ * The output only depends on the seed and on the settings: generating the same report twice gives identical files.
+ *
+ * The source files are split in modules. Out of several reports, each report covers its own share of the source files,
+ * plus each other file with the probability given by the duplication ratio.
+ * All the formats written for the same report contain the same sequence points and hits.
+ */
+public class ReportGenerator {
+
+  public enum Outcome {
+    PASSED, FAILED, IGNORED
+  }
+
+  private final long seed;
+  private File sourceDir = new File("src").getAbsoluteFile();
+  private int modules = 1;
+  private int filesPerModule = 10;
+  private int methodsPerFile = 5;
+  private int sequencePointsPerMethod = 10;
+  private double uncoveredRatio = 0.3;
+  private int maxHits = 100;
+  private double duplicationRatio = 0;
+  private int testsPerModule = 100;
+  private double failureRatio = 0.05;
+  private double ignoredRatio = 0.02;
+
+  public ReportGenerator(long seed) {
+    this.seed = seed;
+  }
+
+  public ReportGenerator sourceDir(File sourceDir) {
+    this.sourceDir = sourceDir.getAbsoluteFile();
+    return this;
+  }
+
+  public ReportGenerator modules(int modules) {
+    this.modules = modules;
+    return this;
+  }
+
+  public ReportGenerator filesPerModule(int filesPerModule) {
+    this.filesPerModule = filesPerModule;
+    return this;
+  }
+
+  public ReportGenerator methodsPerFile(int methodsPerFile) {
+    this.methodsPerFile = methodsPerFile;
+    return this;
+  }
+
+  public ReportGenerator sequencePointsPerMethod(int sequencePointsPerMethod) {
+    this.sequencePointsPerMethod = sequencePointsPerMethod;
+    return this;
+  }
+
+  /**
+   * Ratio of the sequence points which are not hit, the other ones being hit between 1 and maxHits times,
+   * with a strong bias towards small values.
+   */
+  public ReportGenerator hits(double uncoveredRatio, int maxHits) {
+    this.uncoveredRatio = uncoveredRatio;
+    this.maxHits = maxHits;
+    return this;
+  }
+
+  public ReportGenerator duplicationRatio(double duplicationRatio) {
+    this.duplicationRatio = duplicationRatio;
+    return this;
+  }
+
+  public ReportGenerator tests(int testsPerModule, double failureRatio, double ignoredRatio) {
+    this.testsPerModule = testsPerModule;
+    this.failureRatio = failureRatio;
+    this.ignoredRatio = ignoredRatio;
+    return this;
+  }
+
+  public int files() {
+    return modules * filesPerModule;
+  }
+
+  public int sequencePointsPerFile() {
+    return methodsPerFile * sequencePointsPerMethod;
+  }
+
+  public String sourcePath(int file) {
+    return new File(sourceDir, "module" + (file / filesPerModule) + File.separator + "file" + file + ".cs").getAbsolutePath();
+  }
+
+  public List<String> sourcePaths() {
+    ImmutableList.Builder<String> builder = ImmutableList.builder();
+    for (int file = 0; file < files(); file++) {
+      builder.add(sourcePath(file));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return the coverage that parsing the given report is expected to give,
+   *   with hits of 0 or 1 only for the formats which do not contain hit counts
+   */
+  public Coverage expectedCoverage(int report, int reports, boolean hitCounts) throws IOException {
+    Coverage coverage = new Coverage();
+    for (int file = 0; file < files(); file++) {
+      int[] hits = hits(report, reports, file);
+      if (hits != null) {
+        String path = new File(sourcePath(file)).getCanonicalPath();
+        for (int point = 0; point < hits.length; point++) {
+          coverage.addHits(path, line(point), hitCounts ? hits[point] : Math.min(hits[point], 1));
+        }
+      }
+    }
+    return coverage;
+  }
+
+  public File openCover(File file, int report, int reports) throws IOException {
+    Writer writer = newWriter(file);
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<CoverageSession>\n  <Modules>\n");
+      for (int module = 0; module < modules; module++) {
+        writer.write("    <Module hash=\"" + module + "\">\n      <ModuleName>Module" + module + "</ModuleName>\n      <Files>\n");
+        for (int sourceFile = firstFile(module); sourceFile < firstFile(module + 1); sourceFile++) {
+          if (isCovered(report, reports, sourceFile)) {
+            writer.write("        <File uid=\"" + (sourceFile + 1) + "\" fullPath=\"" + sourcePath(sourceFile) + "\" />\n");
+          }
+        }
+        writer.write("      </Files>\n      <Classes>\n");
+        for (int sourceFile = firstFile(module); sourceFile < firstFile(module + 1); sourceFile++) {
+          int[] hits = hits(report, reports, sourceFile);
+          if (hits == null) {
+            continue;
+          }
+          writer.write("        <Class>\n          <FullName>Module" + module + ".Class" + sourceFile + "</FullName>\n          <Methods>\n");
+          for (int method = 0; method < methodsPerFile; method++) {
+            writer.write("            <Method visited=\"true\">\n              <Name>System.Void Class" + sourceFile + "::Method" + method + "()</Name>\n");
+            writer.write("              <FileRef uid=\"" + (sourceFile + 1) + "\" />\n              <SequencePoints>\n");
+            for (int point = method * sequencePointsPerMethod; point < (method + 1) * sequencePointsPerMethod; point++) {
+              writer.write("                <SequencePoint vc=\"" + hits[point] + "\" uspid=\"" + point + "\" ordinal=\"" + point % sequencePointsPerMethod
+                + "\" offset=\"" + point * 4 + "\" sl=\"" + line(point) + "\" sc=\"9\" el=\"" + line(point) + "\" ec=\"30\" />\n");
+            }
+            writer.write("              </SequencePoints>\n            </Method>\n");
+          }
+          writer.write("          </Methods>\n        </Class>\n");
+        }
+        writer.write("      </Classes>\n    </Module>\n");
+      }
+      writer.write("  </Modules>\n</CoverageSession>\n");
+    } finally {
+      Closeables.closeQuietly(writer);
+    }
+    return file;
+  }
+
+  public File ncover3(File file, int report, int reports) throws IOException {
+    Writer writer = newWriter(file);
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<coverage exportversion=\"3\">\n  <documents>\n");
+      for (int sourceFile = 0; sourceFile < files(); sourceFile++) {
+        if (isCovered(report, reports, sourceFile)) {
+          writer.write("    <doc id=\"" + (sourceFile + 1) + "\" excluded=\"false\" url=\"" + sourcePath(sourceFile) + "\" />\n");
+        }
+      }
+      writer.write("  </documents>\n");
+      for (int module = 0; module < modules; module++) {
+        writer.write("  <module name=\"Module" + module + "\">\n");
+        for (int sourceFile = firstFile(module); sourceFile < firstFile(module + 1); sourceFile++) {
+          int[] hits = hits(report, reports, sourceFile);
+          if (hits == null) {
+            continue;
+          }
+          for (int method = 0; method < methodsPerFile; method++) {
+            writer.write("    <method name=\"Method" + method + "\" class=\"Class" + sourceFile + "\">\n");
+            for (int point = method * sequencePointsPerMethod; point < (method + 1) * sequencePointsPerMethod; point++) {
+              writer.write("      <seqpnt vc=\"" + hits[point] + "\" l=\"" + line(point) + "\" c=\"9\" el=\"" + line(point) + "\" ec=\"30\" doc=\"" + (sourceFile + 1) + "\" />\n");
+            }
+            writer.write("    </method>\n");
+          }
+        }
+        writer.write("  </module>\n");
+      }
+      writer.write("</coverage>\n");
+    } finally {
+      Closeables.closeQuietly(writer);
+    }
+    return file;
+  }
+
+  public File visualStudioCoverage(File file, int report, int reports) throws IOException {
+    Writer writer = newWriter(file);
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<results>\n  <modules>\n");
+      for (int module = 0; module < modules; module++) {
+        writer.write("    <module name=\"module" + module + ".dll\" path=\"module" + module + ".dll\">\n      <functions>\n");
+        int sourceId = 0;
+        for (int sourceFile = firstFile(module); sourceFile < firstFile(module + 1); sourceFile++) {
+          int[] hits = hits(report, reports, sourceFile);
+          if (hits == null) {
+            continue;
+          }
+          for (int method = 0; method < methodsPerFile; method++) {
+            writer.write("        <function id=\"" + method + "\" name=\"Method" + method + "()\" type_name=\"Class" + sourceFile + "\">\n          <ranges>\n");
+            for (int point = method * sequencePointsPerMethod; point < (method + 1) * sequencePointsPerMethod; point++) {
+              writer.write("            <range source_id=\"" + sourceId + "\" covered=\"" + (hits[point] > 0 ? "yes" : "no") + "\" start_line=\"" + line(point)
+                + "\" start_column=\"9\" end_line=\"" + line(point) + "\" end_column=\"30\" />\n");
+            }
+            writer.write("          </ranges>\n        </function>\n");
+          }
+          sourceId++;
+        }
+        writer.write("      </functions>\n      <source_files>\n");
+        sourceId = 0;
+        for (int sourceFile = firstFile(module); sourceFile < firstFile(module + 1); sourceFile++) {
+          if (isCovered(report, reports, sourceFile)) {
+            writer.write("        <source_file id=\"" + sourceId + "\" path=\"" + sourcePath(sourceFile) + "\">\n        </source_file>\n");
+            sourceId++;
+          }
+        }
+        writer.write("      </source_files>\n    </module>\n");
+      }
+      writer.write("  </modules>\n</results>\n");
+    } finally {
+      Closeables.closeQuietly(writer);
+    }
+    return file;
+  }
+
+  /**
+   * Writes the main page of a dotCover HTML report, and one page per covered source file in the "&lt;name&gt;/src" sibling folder.
+   */
+  public File dotCoverHtml(File file, int report, int reports) throws IOException {
+    Files.createParentDirs(file);
+    Files.write("<!DOCTYPE html>\n<html class=\"main\">\n</html>\n", file, Charsets.UTF_8);
+
+    String name = file.getName();
+    File folder = new File(file.getParentFile(), name.substring(0, name.lastIndexOf('.')) + File.separator + "src");
+    for (int sourceFile = 0; sourceFile < files(); sourceFile++) {
+      int[] hits = hits(report, reports, sourceFile);
+      if (hits != null) {
+        writeDotCoverPage(new File(folder, sourceFile + ".html"), sourceFile, hits);
+      }
+    }
+    return file;
+  }
+
+  private void writeDotCoverPage(File file, int sourceFile, int[] hits) throws IOException {
+    Writer writer = newWriter(file);
+    try {
+      writer.write("<!DOCTYPE html>\n<html>\n  <head>\n    <meta http-equiv=\"content-type\" content=\"text/html; charset=utf-8\" />\n");
+      writer.write("    <title>" + sourcePath(sourceFile) + "</title>\n  </head>\n  <body>\n    <pre id=\"content\" class=\"source-code\">\n");
+      for (int line = 1; line <= line(hits.length - 1) + 1; line++) {
+        writer.write("            Console.WriteLine(&quot;Line " + line + "&quot;);\n");
+      }
+      writer.write("    </pre>\n    <script type=\"text/javascript\">\n      highlightRanges([");
+      for (int point = 0; point < hits.length; point++) {
+        if (point > 0) {
+          writer.write(',');
+        }
+        writer.write("[" + line(point) + ",9," + line(point) + ",30," + (hits[point] > 0 ? 1 : 0) + "]");
+      }
+      writer.write("]);\n    </script>\n  </body>\n</html>\n");
+    } finally {
+      Closeables.closeQuietly(writer);
+    }
+  }
+
+  public List<Outcome> testOutcomes(int module) {
+    Random random = random(2, module, 0);
+    ImmutableList.Builder<Outcome> builder = ImmutableList.builder();
+    for (int test = 0; test < testsPerModule; test++) {
+      double value = random.nextDouble();
+      builder.add(value < failureRatio ? Outcome.FAILED : (value < failureRatio + ignoredRatio ? Outcome.IGNORED : Outcome.PASSED));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return the duration of each test in milliseconds, most of them being short
+   */
+  public int[] testDurations(int module) {
+    Random random = random(3, module, 0);
+    int[] durations = new int[testsPerModule];
+    for (int test = 0; test < testsPerModule; test++) {
+      durations[test] = (int) (-Math.log(1 - random.nextDouble()) * 50);
+    }
+    return durations;
+  }
+
+  public File nunit(File file, int module) throws IOException {
+    List<Outcome> outcomes = testOutcomes(module);
+    int[] durations = testDurations(module);
+
+    Writer writer = newWriter(file);
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"no\"?>\n<test-results name=\"Module" + module + ".Tests.dll\" total=\""
+        + (count(outcomes, Outcome.PASSED) + count(outcomes, Outcome.FAILED)) + "\" errors=\"0\" failures=\"" + count(outcomes, Outcome.FAILED)
+        + "\" not-run=\"" + count(outcomes, Outcome.IGNORED) + "\" inconclusive=\"0\" ignored=\"" + count(outcomes, Outcome.IGNORED)
+        + "\" skipped=\"0\" invalid=\"0\" date=\"2014-08-15\" time=\"09:02:13\">\n");
+      writer.write("  <test-suite type=\"Assembly\" name=\"Module" + module + ".Tests.dll\" executed=\"True\">\n    <results>\n");
+      for (int test = 0; test < outcomes.size(); test++) {
+        writer.write("      <test-case name=\"Module" + module + ".Tests.Test" + test + "\" ");
+        switch (outcomes.get(test)) {
+          case PASSED:
+            writer.write("executed=\"True\" result=\"Success\" success=\"True\" time=\"" + seconds(durations[test]) + "\" asserts=\"1\" />\n");
+            break;
+          case FAILED:
+            writer.write("executed=\"True\" result=\"Failure\" success=\"False\" time=\"" + seconds(durations[test]) + "\" asserts=\"1\">\n"
+              + "        <failure>\n          <message><![CDATA[Expected: 42]]></message>\n        </failure>\n      </test-case>\n");
+            break;
+          default:
+            writer.write("executed=\"False\" result=\"Ignored\">\n        <reason>\n          <message><![CDATA[Ignored]]></message>\n        </reason>\n      </test-case>\n");
+            break;
+        }
+      }
+      writer.write("    </results>\n  </test-suite>\n</test-results>\n");
+    } finally {
+      Closeables.closeQuietly(writer);
+    }
+    return file;
+  }
+
+  public File trx(File file, int module) throws IOException {
+    List<Outcome> outcomes = testOutcomes(module);
+    int[] durations = testDurations(module);
+
+    Writer writer = newWriter(file);
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<TestRun id=\"" + module + "\" name=\"Module" + module
+        + "\" xmlns=\"http://microsoft.com/schemas/VisualStudio/TeamTest/2010\">\n  <Results>\n");
+      for (int test = 0; test < outcomes.size(); test++) {
+        Outcome outcome = outcomes.get(test);
+        writer.write("    <UnitTestResult testId=\"" + test + "\" testName=\"Test" + test + "\" computerName=\"BUILD\"");
+        if (outcome == Outcome.IGNORED) {
+          writer.write(" outcome=\"NotExecuted\" />\n");
+        } else {
+          writer.write(" duration=\"" + timeSpan(durations[test]) + "\" outcome=\"" + (outcome == Outcome.PASSED ? "Passed" : "Failed") + "\" />\n");
+        }
+      }
+      int passed = count(outcomes, Outcome.PASSED);
+      int failed = count(outcomes, Outcome.FAILED);
+      writer.write("  </Results>\n  <ResultSummary outcome=\"" + (failed > 0 ? "Failed" : "Completed") + "\">\n    <Counters total=\"" + outcomes.size()
+        + "\" executed=\"" + (passed + failed) + "\" passed=\"" + passed + "\" failed=\"" + failed + "\" error=\"0\" timeout=\"0\" aborted=\"0\" inconclusive=\"0\""
+        + " passedButRunAborted=\"0\" notRunnable=\"0\" notExecuted=\"" + count(outcomes, Outcome.IGNORED) + "\" disconnected=\"0\" warning=\"0\""
+        + " completed=\"0\" inProgress=\"0\" pending=\"0\" />\n  </ResultSummary>\n</TestRun>\n");
+    } finally {
+      Closeables.closeQuietly(writer);
+    }
+    return file;
+  }
+
+  private int firstFile(int module) {
+    return module * filesPerModule;
+  }
+
+  private int line(int point) {
+    int method = point / sequencePointsPerMethod;
+    return 10 + method * (sequencePointsPerMethod + 4) + point % sequencePointsPerMethod;
+  }
+
+  private boolean isCovered(int report, int reports, int file) {
+    return file % reports == report || random(0, report, file).nextDouble() < duplicationRatio;
+  }
+
+  private int[] hits(int report, int reports, int file) {
+    if (!isCovered(report, reports, file)) {
+      return null;
+    }
+
+    Random random = random(1, report, file);
+    int[] hits = new int[sequencePointsPerFile()];
+    for (int point = 0; point < hits.length; point++) {
+      if (random.nextDouble() >= uncoveredRatio) {
+        double value = random.nextDouble();
+        hits[point] = 1 + (int) (value * value * value * (maxHits - 1));
+      }
+    }
+    return hits;
+  }
+
+  private Random random(int kind, int first, int second) {
+    return new Random(((seed * 31 + kind) * 1000003L + first) * 1000003L + second);
+  }
+
+  private static int count(List<Outcome> outcomes, Outcome outcome) {
+    int count = 0;
+    for (Outcome o : outcomes) {
+      if (o == outcome) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static String seconds(int millis) {
+    return String.format(Locale.ENGLISH, "%d.%03d", millis / 1000, millis % 1000);
+  }
+
+  private static String timeSpan(int millis) {
+    return String.format(Locale.ENGLISH, "%02d:%02d:%02d.%03d0000", millis / 3600000, millis / 60000 % 60, millis / 1000 % 60, millis % 1000);
+  }
+
+  private static Writer newWriter(File file) throws IOException {
+    Files.createParentDirs(file);
+    return Files.newWriter(file, Charsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ReportGeneratorTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private ReportGenerator generator() {
+    return new ReportGenerator(42)
+      .sourceDir(new File(tmp.getRoot(), "src"))
+      .modules(3)
+      .filesPerModule(4)
+      .methodsPerFile(3)
+      .sequencePointsPerMethod(5)
+      .hits(0.3, 50)
+      .duplicationRatio(0.25)
+      .tests(40, 0.1, 0.05);
+  }
+
+  @Test
+  public void coverage_reports_match_expected_coverage() throws Exception {
+    ReportGenerator generator = generator();
+
+    for (int report = 0; report < 2; report++) {
+      Coverage expected = generator.expectedCoverage(report, 2, true);
+      Coverage expectedCoveredOnly = generator.expectedCoverage(report, 2, false);
+      assertThat(expected.files()).isNotEmpty();
+
+      Coverage coverage = new Coverage();
+      new OpenCoverReportParser().parse(generator.openCover(tmp.newFile(), report, 2), coverage);
+      assertSameCoverage(coverage, expected);
+
+      coverage = new Coverage();
+      new NCover3ReportParser().parse(generator.ncover3(tmp.newFile(), report, 2), coverage);
+      assertSameCoverage(coverage, expected);
+
+      coverage = new Coverage();
+      new VisualStudioCoverageXmlReportParser().parse(generator.visualStudioCoverage(tmp.newFile(), report, 2), coverage);
+      assertSameCoverage(coverage, expectedCoveredOnly);
+
+      coverage = new Coverage();
+      new DotCoverReportsAggregator(new DotCoverReportParser()).parse(generator.dotCoverHtml(new File(tmp.getRoot(), "dotcover" + report + ".html"), report, 2), coverage);
+      assertSameCoverage(coverage, expectedCoveredOnly);
+    }
+  }
+
+  @Test
+  public void reports_share_files_according_to_duplication_ratio() throws Exception {
+    ReportGenerator generator = generator();
+    Coverage first = generator.expectedCoverage(0, 2, true);
+    Coverage second = generator.expectedCoverage(1, 2, true);
+
+    Coverage all = new Coverage();
+    all.add(first);
+    all.add(second);
+    assertThat(all.files()).hasSize(generator.files());
+    assertThat(first.files().size() + second.files().size()).isGreaterThan(generator.files());
+
+    Coverage withoutDuplication = generator.duplicationRatio(0).expectedCoverage(0, 2, true);
+    assertThat(withoutDuplication.files()).hasSize(generator.files() / 2);
+  }
+
+  @Test
+  public void output_is_deterministic() throws Exception {
+    File first = generator().openCover(tmp.newFile(), 0, 1);
+    File second = generator().openCover(tmp.newFile(), 0, 1);
+    File otherSeed = new ReportGenerator(43).sourceDir(new File(tmp.getRoot(), "src")).modules(3).filesPerModule(4).methodsPerFile(3)
+      .sequencePointsPerMethod(5).hits(0.3, 50).openCover(tmp.newFile(), 0, 1);
+
+    assertThat(Files.equal(first, second)).isTrue();
+    assertThat(Files.equal(first, otherSeed)).isFalse();
+  }
+
+  @Test
+  public void unit_test_results() throws Exception {
+    ReportGenerator generator = generator();
+    List<ReportGenerator.Outcome> outcomes = generator.testOutcomes(1);
+    int failed = count(outcomes, ReportGenerator.Outcome.FAILED);
+    int ignored = count(outcomes, ReportGenerator.Outcome.IGNORED);
+    assertThat(outcomes).hasSize(40);
+    assertThat(generator.testDurations(1)).hasSize(40);
+
+    UnitTestResults results = new UnitTestResults();
+    new NUnitTestResultsFileParser().parse(generator.nunit(tmp.newFile(), 1), results);
+    assertThat(results.tests()).isEqualTo(40 - ignored);
+    assertThat(results.failures()).isEqualTo(failed);
+    assertThat(results.skipped()).isEqualTo(ignored);
+
+    results = new UnitTestResults();
+    new VisualStudioTestResultsFileParser().parse(generator.trx(tmp.newFile(), 1), results);
+    assertThat(results.tests()).isEqualTo(40 - ignored);
+    assertThat(results.failures()).isEqualTo(failed);
+  }
+
+  private static int count(List<ReportGenerator.Outcome> outcomes, ReportGenerator.Outcome outcome) {
+    int count = 0;
+    for (ReportGenerator.Outcome o : outcomes) {
+      if (o == outcome) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void assertSameCoverage(Coverage actual, Coverage expected) {
+    assertThat(actual.files()).isEqualTo(expected.files());
+    for (String file : expected.files()) {
+      assertThat(actual.hits(file)).isEqualTo(expected.hits(file));
+    }
+  }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ReportStreamsTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void plain() throws Exception {
+    File file = tmp.newFile("report.xml");
+    Files.write("<report />", file, Charsets.UTF_8);
+
+    assertThat(read(file)).isEqualTo("<report />");
+    assertThat(ReportStreams.exists(file)).isTrue();
+    assertThat(ReportStreams.archive(file)).isNull();
+    assertThat(ReportStreams.physicalFile(file)).isEqualTo(file);
+  }
+
+  @Test
+  public void empty() throws Exception {
+    assertThat(read(tmp.newFile("empty.xml"))).isEmpty();
+  }
+
+  @Test
+  public void gzip_whatever_the_extension() throws Exception {
+    File file = tmp.newFile("report.xml");
+    Files.write(gzip("<report />".getBytes(Charsets.UTF_8)), file);
+
+    assertThat(read(file)).isEqualTo("<report />");
+  }
+
+  @Test
+  public void zip_first_file_entry() throws Exception {
+    File file = tmp.newFile("reports.zip");
+    zip(file, "folder/", "", "first.xml", "<first />", "second.xml", "<second />");
+
+    assertThat(read(file)).isEqualTo("<first />");
+  }
+
+  @Test(expected = IOException.class)
+  public void zip_without_file_entry() throws Exception {
+    File file = tmp.newFile("reports.zip");
+    zip(file, "folder/", "");
+
+    read(file);
+  }
+
+  @Test
+  public void archive_entries() throws Exception {
+    File archive = tmp.newFile("reports.zip");
+    zip(archive, "first.xml", "<first />", "tests/second.xml", "<second />");
+    File entry = ReportStreams.archiveEntry(archive, "tests/second.xml");
+
+    assertThat(read(entry)).isEqualTo("<second />");
+    assertThat(read(ReportStreams.archiveEntry(archive, "first.xml"))).isEqualTo("<first />");
+    assertThat(ReportStreams.exists(entry)).isTrue();
+    assertThat(ReportStreams.exists(ReportStreams.archiveEntry(archive, "missing.xml"))).isFalse();
+    assertThat(ReportStreams.exists(ReportStreams.archiveEntry(new File(tmp.getRoot(), "missing.zip"), "first.xml"))).isFalse();
+    assertThat(ReportStreams.archive(entry)).isEqualTo(archive);
+    assertThat(ReportStreams.physicalFile(entry)).isEqualTo(archive);
+  }
+
+  @Test
+  public void gzip_archive_entry() throws Exception {
+    File archive = tmp.newFile("reports.zip");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+    try {
+      out.putNextEntry(new ZipEntry("report.xml.gz"));
+      out.write(gzip("<report />".getBytes(Charsets.UTF_8)));
+      out.closeEntry();
+    } finally {
+      out.close();
+    }
+
+    assertThat(read(ReportStreams.archiveEntry(archive, "report.xml.gz"))).isEqualTo("<report />");
+  }
+
+  @Test
+  public void separator_within_ordinary_paths() throws Exception {
+    File folder = tmp.newFolder("build!");
+    File file = new File(folder, "report.xml");
+    Files.write("<report />", file, Charsets.UTF_8);
+    File notArchive = tmp.newFile("report.txt");
+
+    assertThat(ReportStreams.archive(file)).isNull();
+    assertThat(read(file)).isEqualTo("<report />");
+    assertThat(ReportStreams.archive(new File(folder, "missing.xml"))).isNull();
+    assertThat(ReportStreams.archive(ReportStreams.archiveEntry(notArchive, "report.xml"))).isNull();
+    assertThat(ReportStreams.exists(ReportStreams.archiveEntry(notArchive, "report.xml"))).isFalse();
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void missing_archive_entry() throws Exception {
+    File archive = tmp.newFile("reports.zip");
+    zip(archive, "first.xml", "<first />");
+
+    read(ReportStreams.archiveEntry(archive, "missing.xml"));
+  }
+
+  @Test
+  public void compressed_reports_are_parsed() throws Exception {
+    File file = tmp.newFile("results.xml.gz");
+    Files.write(gzip(Files.toByteArray(new File("src/test/resources/opencover/valid.xml"))), file);
+
+    Coverage coverage = new Coverage();
+    new OpenCoverReportParser().parse(file, coverage);
+
+    assertThat(coverage.hits(new File("MyLibrary\\Adder.cs").getCanonicalPath())).hasSize(15);
+  }
+
+  private static String read(File file) throws IOException {
+    InputStream in = ReportStreams.open(file);
+    try {
+      return new String(ByteStreams.toByteArray(in), Charsets.UTF_8);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    GZIPOutputStream out = new GZIPOutputStream(result);
+    out.write(bytes);
+    out.close();
+    return result.toByteArray();
+  }
+
+  private static void zip(File file, String... namesAndContents) throws IOException {
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+    try {
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+        out.putNextEntry(new ZipEntry(namesAndContents[i]));
+        out.write(namesAndContents[i + 1].getBytes(Charsets.UTF_8));
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+}
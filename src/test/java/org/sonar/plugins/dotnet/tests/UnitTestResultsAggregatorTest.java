@@ -19,6 +19,7 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import org.junit.Rule;
 import org.junit.Test;
@@ -32,6 +33,8 @@ import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.sonar.plugins.dotnet.tests.MockFileProviders.mockFileProvider;
+import static org.sonar.plugins.dotnet.tests.MockFileProviders.stubBatchListFiles;
 
 public class UnitTestResultsAggregatorTest {
 
@@ -68,7 +71,7 @@ public class UnitTestResultsAggregatorTest {
 
   @Test
   public void aggregate() {
-    WildcardPatternFileProvider wildcardPatternFileProvider = mock(WildcardPatternFileProvider.class);
+    WildcardPatternFileProvider wildcardPatternFileProvider = mockFileProvider();
 
     UnitTestConfiguration unitTestConf = new UnitTestConfiguration("visualStudioTestResultsFile", "nunitTestResultsFile");
     Settings settings = mock(Settings.class);
@@ -127,6 +130,7 @@ public class UnitTestResultsAggregatorTest {
 
     // Multiple files configured
     Mockito.reset(wildcardPatternFileProvider);
+    stubBatchListFiles(wildcardPatternFileProvider);
 
     when(settings.hasKey("visualStudioTestResultsFile")).thenReturn(true);
     when(settings.getString("visualStudioTestResultsFile")).thenReturn(",*.trx  ,bar.trx");
@@ -143,10 +147,7 @@ public class UnitTestResultsAggregatorTest {
     new UnitTestResultsAggregator(unitTestConf, settings, visualStudioTestResultsFileParser, nunitTestResultsFileParser)
       .aggregate(wildcardPatternFileProvider, results);
 
-    verify(wildcardPatternFileProvider).listFiles("*.trx");
-    verify(wildcardPatternFileProvider).listFiles("bar.trx");
-    verify(wildcardPatternFileProvider).listFiles("foo.xml");
-    verify(wildcardPatternFileProvider).listFiles("bar.xml");
+    verify(wildcardPatternFileProvider).listFiles(ImmutableList.of("*.trx", "bar.trx", "foo.xml", "bar.xml"));
 
     verify(visualStudioTestResultsFileParser).parse(new File("foo.trx"), results);
     verify(visualStudioTestResultsFileParser).parse(new File("bar.trx"), results);
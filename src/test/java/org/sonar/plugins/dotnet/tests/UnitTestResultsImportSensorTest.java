@@ -73,6 +73,23 @@ public class UnitTestResultsImportSensorTest {
     verify(context).saveMeasure(CoreMetrics.TEST_ERRORS, 3.0);
   }
 
+  @Test
+  public void execution_time() {
+    UnitTestResults results = new UnitTestResults();
+    results.add(2, 1, 0, 1, 0);
+    results.addTestCase("Fast", UnitTestResults.Outcome.PASSED, 3);
+    results.addTestCase("Slow", UnitTestResults.Outcome.FAILED, 40);
+
+    UnitTestResultsAggregator unitTestResultsAggregator = mock(UnitTestResultsAggregator.class);
+    when(unitTestResultsAggregator.aggregate(Mockito.any(WildcardPatternFileProvider.class), Mockito.any(UnitTestResults.class))).thenReturn(results);
+    SensorContext context = mock(SensorContext.class);
+
+    new UnitTestResultsImportSensor(unitTestResultsAggregator).analyze(context, results);
+
+    verify(context).saveMeasure(CoreMetrics.TESTS, 2.0);
+    verify(context).saveMeasure(CoreMetrics.TEST_EXECUTION_TIME, 43.0);
+  }
+
   @Test
   public void should_not_save_metrics_with_empty_results() {
     SensorContext context = mock(SensorContext.class);
@@ -93,6 +110,7 @@ public class UnitTestResultsImportSensorTest {
     verify(context).saveMeasure(CoreMetrics.TEST_FAILURES, 2.0);
     verify(context).saveMeasure(CoreMetrics.TEST_ERRORS, 3.0);
     verify(context, Mockito.never()).saveMeasure(Mockito.eq(CoreMetrics.TEST_SUCCESS_DENSITY), Mockito.anyDouble());
+    verify(context, Mockito.never()).saveMeasure(Mockito.eq(CoreMetrics.TEST_EXECUTION_TIME), Mockito.anyDouble());
   }
 
   @Test
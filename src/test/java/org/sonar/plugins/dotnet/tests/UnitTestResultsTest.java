@@ -0,0 +1,62 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class UnitTestResultsTest {
+
+  @Test
+  public void test_cases_do_not_change_the_counters() {
+    UnitTestResults results = new UnitTestResults();
+    results.add(1, 1, 0, 0, 0);
+    results.addTestCase("Foo", UnitTestResults.Outcome.PASSED, 12);
+
+    assertThat(results.tests()).isEqualTo(1);
+    assertThat(results.testCases()).isEqualTo(1);
+    assertThat(results.testCase(0).name()).isEqualTo("Foo");
+    assertThat(results.executionTime()).isEqualTo(12.0);
+  }
+
+  @Test
+  public void slowest_test_cases() {
+    UnitTestResults results = new UnitTestResults();
+    for (int i = 0; i < 1000; i++) {
+      results.addTestCase("Test" + i, UnitTestResults.Outcome.PASSED, i % 100);
+    }
+    results.addTestCase("Slowest", UnitTestResults.Outcome.FAILED, 5000);
+
+    List<UnitTestResults.TestCase> slowest = results.slowestTestCases(3);
+    assertThat(slowest).hasSize(3);
+    assertThat(slowest.get(0).name()).isEqualTo("Slowest");
+    assertThat(slowest.get(0).outcome()).isEqualTo(UnitTestResults.Outcome.FAILED);
+    assertThat(slowest.get(1).name()).isEqualTo("Test99");
+    assertThat(slowest.get(2).name()).isEqualTo("Test199");
+
+    assertThat(results.slowestTestCases(0)).isEmpty();
+    assertThat(new UnitTestResults().slowestTestCases(3)).isEmpty();
+    assertThat(results.slowestTestCases(2000)).hasSize(1001);
+  }
+
+}
@@ -57,6 +57,24 @@ public class VisualStudioCoverageXmlReportParserTest {
     new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/wrong_covered.coveragexml"), mock(Coverage.class));
   }
 
+  @Test
+  public void wrong_end_line() {
+    thrown.expect(RuntimeException.class);
+    thrown.expectMessage("Expected an \"end_line\" greater than or equal to the \"start_line\" 13 instead of 12");
+    thrown.expectMessage("wrong_end_line.coveragexml");
+    thrown.expectMessage("line 8");
+    new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/wrong_end_line.coveragexml"), mock(Coverage.class));
+  }
+
+  @Test
+  public void huge_range() {
+    thrown.expect(RuntimeException.class);
+    thrown.expectMessage("Expected a range of at most 65536 lines instead of the lines 13 to 16707566");
+    thrown.expectMessage("huge_range.coveragexml");
+    thrown.expectMessage("line 8");
+    new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/huge_range.coveragexml"), mock(Coverage.class));
+  }
+
   @Test
   public void valid() throws Exception {
     Coverage coverage = new Coverage();
@@ -87,6 +105,67 @@ public class VisualStudioCoverageXmlReportParserTest {
         MapAssert.entry(34, 0));
   }
 
+  @Test
+  public void source_ids_are_scoped_to_their_module() throws Exception {
+    Coverage coverage = new Coverage();
+    new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/modules.coveragexml"), coverage);
+
+    assertThat(coverage.files()).containsOnly(
+      new File("First.cs").getCanonicalPath(),
+      new File("Third.cs").getCanonicalPath(),
+      new File("Second.cs").getCanonicalPath());
+    assertThat(coverage.hits(new File("First.cs").getCanonicalPath()))
+      .hasSize(2)
+      .includes(
+        MapAssert.entry(10, 1),
+        MapAssert.entry(11, 0));
+    assertThat(coverage.hits(new File("Third.cs").getCanonicalPath())).hasSize(1).includes(MapAssert.entry(5, 1));
+    assertThat(coverage.hits(new File("Second.cs").getCanonicalPath())).hasSize(1).includes(MapAssert.entry(20, 1));
+  }
+
+  @Test
+  public void multi_line_ranges() throws Exception {
+    Coverage coverage = new Coverage();
+    new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/ranges.coveragexml"), coverage);
+
+    assertThat(coverage.files()).containsOnly(new File("Ranges.cs").getCanonicalPath());
+    assertThat(coverage.hits(new File("Ranges.cs").getCanonicalPath()))
+      .hasSize(16)
+      .includes(
+        MapAssert.entry(10, 1),
+        MapAssert.entry(11, 1),
+        MapAssert.entry(12, 1),
+        MapAssert.entry(13, 0),
+        MapAssert.entry(14, 0),
+        MapAssert.entry(20, 1),
+        MapAssert.entry(21, 1),
+        MapAssert.entry(22, 1),
+        MapAssert.entry(30, 1),
+        MapAssert.entry(31, 1),
+        MapAssert.entry(32, 1),
+        MapAssert.entry(33, 1),
+        MapAssert.entry(34, 1),
+        MapAssert.entry(35, 1),
+        MapAssert.entry(40, 0),
+        MapAssert.entry(50, 1));
+  }
+
+  @Test
+  public void sparse_source_ids_and_lines() throws Exception {
+    Coverage coverage = new Coverage();
+    new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/sparse.coveragexml"), coverage);
+
+    assertThat(coverage.hits(new File("Sparse.cs").getCanonicalPath()))
+      .hasSize(6)
+      .includes(
+        MapAssert.entry(10, 1),
+        MapAssert.entry(11, 1),
+        MapAssert.entry(65535, 1),
+        MapAssert.entry(65536, 1),
+        MapAssert.entry(65537, 1),
+        MapAssert.entry(16707566, 0));
+  }
+
   @Test
   public void should_not_fail_with_invalid_path() {
     new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/invalid_path.coveragexml"), mock(Coverage.class));
@@ -61,4 +61,45 @@ public class VisualStudioTestResultsFileParserTest {
     assertThat(results.errors()).isEqualTo(3);
   }
 
+  @Test
+  public void test_cases() {
+    UnitTestResults results = new UnitTestResults();
+    new VisualStudioTestResultsFileParser().parse(new File("src/test/resources/visualstudio_test_results/test_cases.trx"), results);
+
+    assertThat(results.tests()).isEqualTo(4);
+    assertThat(results.testCases()).isEqualTo(5);
+    checkTestCase(results.testCase(0), "Passing", UnitTestResults.Outcome.PASSED, 125);
+    checkTestCase(results.testCase(1), "Failing", UnitTestResults.Outcome.FAILED, 62500);
+    checkTestCase(results.testCase(2), "TimingOut", UnitTestResults.Outcome.FAILED, 30000);
+    checkTestCase(results.testCase(3), "Throwing", UnitTestResults.Outcome.ERROR, 1);
+    checkTestCase(results.testCase(4), "NotRun", UnitTestResults.Outcome.SKIPPED, 0);
+    assertThat(results.executionTime()).isEqualTo(92626.0);
+  }
+
+  @Test
+  public void data_driven_test_cases() {
+    UnitTestResults results = new UnitTestResults();
+    new VisualStudioTestResultsFileParser().parse(new File("src/test/resources/visualstudio_test_results/data_driven.trx"), results);
+
+    assertThat(results.tests()).isEqualTo(2);
+    assertThat(results.testCases()).isEqualTo(2);
+    checkTestCase(results.testCase(0), "DataDriven", UnitTestResults.Outcome.FAILED, 300);
+    checkTestCase(results.testCase(1), "Passing", UnitTestResults.Outcome.PASSED, 125);
+    assertThat(results.executionTime()).isEqualTo(425.0);
+  }
+
+  @Test
+  public void wrong_duration() {
+    thrown.expect(ParseErrorException.class);
+    thrown.expectMessage("Expected a duration instead of \"foo\" for the attribute \"duration\" in ");
+    thrown.expectMessage(new File("src/test/resources/visualstudio_test_results/wrong_duration.trx").getAbsolutePath());
+    new VisualStudioTestResultsFileParser().parse(new File("src/test/resources/visualstudio_test_results/wrong_duration.trx"), new UnitTestResults());
+  }
+
+  private static void checkTestCase(UnitTestResults.TestCase testCase, String name, UnitTestResults.Outcome outcome, long durationMillis) {
+    assertThat(testCase.name()).isEqualTo(name);
+    assertThat(testCase.outcome()).isEqualTo(outcome);
+    assertThat(testCase.durationMillis()).isEqualTo(durationMillis);
+  }
+
 }
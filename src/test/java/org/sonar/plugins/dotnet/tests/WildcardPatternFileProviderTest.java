@@ -20,6 +20,7 @@
 package org.sonar.plugins.dotnet.tests;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -27,7 +28,11 @@ import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -171,6 +176,91 @@ public class WildcardPatternFileProviderTest {
         new File(tmp.getRoot(), path("c", "c22", "c31", "foo.txt")));
   }
 
+  @Test
+  public void wildcards_without_recursive_pattern_stop_at_pattern_depth() {
+    assertThat(listFiles("*", tmp.getRoot()))
+      .containsOnly(
+        new File(tmp.getRoot(), "foo.txt"),
+        new File(tmp.getRoot(), "bar.txt"),
+        new File(tmp.getRoot(), "a"),
+        new File(tmp.getRoot(), "b"),
+        new File(tmp.getRoot(), "c"));
+
+    assertThat(listFiles(path("*", "foo.txt"), tmp.getRoot()))
+      .containsOnly(new File(tmp.getRoot(), path("a", "foo.txt")));
+
+    assertThat(listFiles(path("c", "*", "c31", "*.txt"), tmp.getRoot()))
+      .containsOnly(new File(tmp.getRoot(), path("c", "c22", "c31", "foo.txt")), new File(tmp.getRoot(), path("c", "c22", "c31", "bar.txt")));
+
+    assertThat(listFiles(path("c", "**"), tmp.getRoot()))
+      .containsOnly(
+        new File(tmp.getRoot(), path("c", "c21")),
+        new File(tmp.getRoot(), path("c", "c21", "foo.txt")),
+        new File(tmp.getRoot(), path("c", "c22")),
+        new File(tmp.getRoot(), path("c", "c22", "c31")),
+        new File(tmp.getRoot(), path("c", "c22", "c31", "foo.txt")),
+        new File(tmp.getRoot(), path("c", "c22", "c31", "bar.txt")));
+  }
+
+  @Test
+  public void recursive_pattern_within_an_element_spans_directories() {
+    assertThat(listFiles("**.txt", tmp.getRoot()))
+      .containsOnly(
+        new File(tmp.getRoot(), "foo.txt"),
+        new File(tmp.getRoot(), "bar.txt"),
+        new File(tmp.getRoot(), path("a", "foo.txt")),
+        new File(tmp.getRoot(), path("c", "c21", "foo.txt")),
+        new File(tmp.getRoot(), path("c", "c22", "c31", "foo.txt")),
+        new File(tmp.getRoot(), path("c", "c22", "c31", "bar.txt")));
+
+    assertThat(listFiles(path("c", "**.txt"), tmp.getRoot()))
+      .containsOnly(
+        new File(tmp.getRoot(), path("c", "c21", "foo.txt")),
+        new File(tmp.getRoot(), path("c", "c22", "c31", "foo.txt")),
+        new File(tmp.getRoot(), path("c", "c22", "c31", "bar.txt")));
+
+    assertThat(listFiles(path("c", "c2*", "**bar.txt"), tmp.getRoot()))
+      .containsOnly(new File(tmp.getRoot(), path("c", "c22", "c31", "bar.txt")));
+  }
+
+  @Test
+  public void patterns_with_the_other_directory_separator() {
+    String otherSeparator = "/".equals(File.separator) ? "\\" : "/";
+
+    assertThat(listFiles("c" + otherSeparator + "*" + otherSeparator + "foo.txt", tmp.getRoot()))
+      .containsOnly(new File(tmp.getRoot(), path("c", "c21", "foo.txt")));
+
+    assertThat(listFiles("c" + otherSeparator + "**" + otherSeparator + "bar.txt", tmp.getRoot()))
+      .containsOnly(new File(tmp.getRoot(), path("c", "c22", "c31", "bar.txt")));
+
+    assertThat(listFiles(path("c", "c22") + otherSeparator + "*" + otherSeparator + "*.txt", tmp.getRoot()))
+      .containsOnly(new File(tmp.getRoot(), path("c", "c22", "c31", "foo.txt")), new File(tmp.getRoot(), path("c", "c22", "c31", "bar.txt")));
+  }
+
+  @Test
+  public void wildcards_do_not_treat_other_characters_as_regular_expressions() {
+    assertThat(listFiles("f.*", tmp.getRoot())).isEmpty();
+    assertThat(listFiles("foo.tx?", tmp.getRoot()))
+      .containsOnly(new File(tmp.getRoot(), "foo.txt"));
+  }
+
+  @Test
+  public void multiple_patterns() {
+    Map<String, Set<File>> filesByPattern = new WildcardPatternFileProvider(tmp.getRoot(), File.separator)
+      .listFiles(ImmutableList.of("*.txt", path("**", "c31", "*.txt"), "foo.txt", path("c", "*", "foo.txt"), "nonexisting.txt", "*.txt"));
+
+    assertThat(ImmutableList.copyOf(filesByPattern.keySet())).isEqualTo(ImmutableList.of("*.txt", path("**", "c31", "*.txt"), "foo.txt", path("c", "*", "foo.txt"), "nonexisting.txt"));
+    assertThat(filesByPattern.get("*.txt"))
+      .containsOnly(new File(tmp.getRoot(), "foo.txt"), new File(tmp.getRoot(), "bar.txt"));
+    assertThat(filesByPattern.get(path("**", "c31", "*.txt")))
+      .containsOnly(new File(tmp.getRoot(), path("c", "c22", "c31", "foo.txt")), new File(tmp.getRoot(), path("c", "c22", "c31", "bar.txt")));
+    assertThat(filesByPattern.get("foo.txt"))
+      .containsOnly(new File(tmp.getRoot(), "foo.txt"));
+    assertThat(filesByPattern.get(path("c", "*", "foo.txt")))
+      .containsOnly(new File(tmp.getRoot(), path("c", "c21", "foo.txt")));
+    assertThat(filesByPattern.get("nonexisting.txt")).isEmpty();
+  }
+
   @Test
   public void should_fail_with_current_folder_access_after_wildcard() {
     thrown.expect(IllegalArgumentException.class);
@@ -187,6 +277,46 @@ public class WildcardPatternFileProviderTest {
     listFiles(path("*", "..", "foo.txt"), tmp.getRoot());
   }
 
+  @Test
+  public void zip_archive_entries() throws Exception {
+    File archive = new File(tmp.getRoot(), path("c", "reports.zip"));
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+    try {
+      for (String name : ImmutableList.of("results.trx", "tests/", "tests/a.trx", "tests/nested/b.trx", "tests/c.xml")) {
+        out.putNextEntry(new ZipEntry(name));
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+
+    Map<String, Set<File>> filesByPattern = new WildcardPatternFileProvider(tmp.getRoot(), File.separator)
+      .listFiles(ImmutableList.of(path("c", "*.zip") + "!/**/*.trx", path("c", "reports.zip") + "!/tests/c.xml", "*.txt!/foo.txt", path("c", "*.zip") + "!/missing.trx"));
+
+    assertThat(filesByPattern.get(path("c", "*.zip") + "!/**/*.trx")).containsOnly(
+      ReportStreams.archiveEntry(archive, "results.trx"),
+      ReportStreams.archiveEntry(archive, "tests/a.trx"),
+      ReportStreams.archiveEntry(archive, "tests/nested/b.trx"));
+    assertThat(filesByPattern.get(path("c", "reports.zip") + "!/tests/c.xml")).containsOnly(ReportStreams.archiveEntry(archive, "tests/c.xml"));
+    assertThat(filesByPattern.get(path("c", "*.zip") + "!/missing.trx")).isEmpty();
+    assertThat(filesByPattern.get("*.txt!/foo.txt")).isEmpty();
+
+    assertThat(listFiles(path("c", "reports.zip") + "!/tests/a.trx", tmp.getRoot())).containsOnly(new File(tmp.getRoot(), path("c", "reports.zip") + "!/tests/a.trx"));
+    assertThat(listFiles(path("c", "reports.zip") + "!/tests/missing.trx", tmp.getRoot())).isEmpty();
+  }
+
+  @Test
+  public void separator_within_ordinary_paths() throws Exception {
+    File folder = new File(tmp.getRoot(), path("c", "build!"));
+    folder.mkdir();
+    File report = new File(folder, "results.trx");
+    report.createNewFile();
+
+    assertThat(listFiles(path("c", "build!", "results.trx"), tmp.getRoot())).containsOnly(report);
+    assertThat(listFiles(path("c", "*!", "*.trx"), tmp.getRoot())).containsOnly(report);
+    assertThat(listFiles(path("c", "build!") + "/missing.trx", tmp.getRoot())).isEmpty();
+  }
+
   private static String path(String... elements) {
     return Joiner.on(File.separator).join(elements);
   }
@@ -25,6 +25,8 @@ import org.junit.rules.ExpectedException;
 
 import java.io.File;
 
+import static org.fest.assertions.Assertions.assertThat;
+
 public class XmlParserHelperTest {
 
   @Rule
@@ -38,4 +40,109 @@ public class XmlParserHelperTest {
     new XmlParserHelper(new File("src/test/resources/xml_parser_helper/invalid_prolog.txt")).nextTag();
   }
 
+  @Test
+  public void external_entities_are_not_resolved() {
+    thrown.expectMessage("Error while parsing the XML file: ");
+    thrown.expectMessage("external_entity.xml");
+
+    XmlParserHelper xmlParserHelper = new XmlParserHelper(new File("src/test/resources/xml_parser_helper/external_entity.xml"));
+    try {
+      xmlParserHelper.checkRootTag("Root");
+      while (xmlParserHelper.nextTag() != null) {
+        // Reading the element content must fail on the undeclared entity
+      }
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
+  @Test
+  public void attributes_in_any_order() {
+    XmlParserHelper xmlParserHelper = new XmlParserHelper(new File("src/test/resources/xml_parser_helper/attributes.xml"));
+    try {
+      xmlParserHelper.checkRootTag("Root");
+
+      assertThat(xmlParserHelper.nextTag()).isEqualTo("Point");
+      assertThat(xmlParserHelper.getRequiredIntAttribute("a")).isEqualTo(1);
+      assertThat(xmlParserHelper.getRequiredIntAttribute("c")).isEqualTo(3);
+
+      assertThat(xmlParserHelper.nextTag()).isEqualTo("Point");
+      assertThat(xmlParserHelper.getRequiredIntAttribute("a")).isEqualTo(10);
+      assertThat(xmlParserHelper.getRequiredIntAttribute("c")).isEqualTo(30);
+
+      assertThat(xmlParserHelper.nextTag()).isEqualTo("Point");
+      assertThat(xmlParserHelper.getAttribute("a")).isNull();
+      assertThat(xmlParserHelper.getAttribute("c")).isNull();
+      assertThat(xmlParserHelper.getRequiredIntAttribute("b")).isEqualTo(200);
+
+      assertThat(xmlParserHelper.nextTag()).isEqualTo("Other");
+      assertThat(xmlParserHelper.getRequiredIntAttribute("a")).isEqualTo(-1);
+      assertThat(xmlParserHelper.getRequiredAttribute("b")).isEqualTo("x");
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
+  @Test
+  public void attribute_handles_follow_the_order_changes() {
+    XmlParserHelper.Attribute a = new XmlParserHelper.Attribute("a");
+    XmlParserHelper.Attribute c = new XmlParserHelper.Attribute("c");
+
+    XmlParserHelper xmlParserHelper = new XmlParserHelper(new File("src/test/resources/xml_parser_helper/attributes.xml"));
+    try {
+      xmlParserHelper.checkRootTag("Root");
+
+      assertThat(xmlParserHelper.nextTag()).isEqualTo("Point");
+      assertThat(xmlParserHelper.getRequiredIntAttribute(a)).isEqualTo(1);
+      assertThat(xmlParserHelper.getRequiredIntAttribute(c)).isEqualTo(3);
+
+      assertThat(xmlParserHelper.nextTag()).isEqualTo("Point");
+      assertThat(xmlParserHelper.getRequiredIntAttribute(a)).isEqualTo(10);
+      assertThat(xmlParserHelper.getRequiredAttribute(c)).isEqualTo("30");
+
+      assertThat(xmlParserHelper.nextTag()).isEqualTo("Point");
+      assertThat(xmlParserHelper.getAttribute(a)).isNull();
+      assertThat(xmlParserHelper.getAttribute(c)).isNull();
+
+      assertThat(xmlParserHelper.nextTag()).isEqualTo("Other");
+      assertThat(xmlParserHelper.getRequiredIntAttribute(a)).isEqualTo(-1);
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
+  @Test
+  public void missing_attribute_handle() {
+    thrown.expect(ParseErrorException.class);
+    thrown.expectMessage("Missing attribute \"c\" in element <Other>");
+
+    XmlParserHelper xmlParserHelper = new XmlParserHelper(new File("src/test/resources/xml_parser_helper/attributes.xml"));
+    try {
+      xmlParserHelper.checkRootTag("Root");
+      while (!"Other".equals(xmlParserHelper.nextTag())) {
+        // Skip to the element without the attribute
+      }
+      xmlParserHelper.getRequiredIntAttribute(new XmlParserHelper.Attribute("c"));
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
+  @Test
+  public void invalid_int_attribute() {
+    thrown.expect(ParseErrorException.class);
+    thrown.expectMessage("Expected an integer instead of \"x\" for the attribute \"b\"");
+
+    XmlParserHelper xmlParserHelper = new XmlParserHelper(new File("src/test/resources/xml_parser_helper/attributes.xml"));
+    try {
+      xmlParserHelper.checkRootTag("Root");
+      while (!"Other".equals(xmlParserHelper.nextTag())) {
+        // Skip to the element with the invalid value
+      }
+      xmlParserHelper.getRequiredIntAttribute("b");
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
 }